@@ -0,0 +1,157 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Measures the injection of a {@code module-info.class} file into a synthetic jar file with a given number of entries
+ * where the entries are either all stored, all deflated or alternately stored and deflated. The entries are either
+ * copied in their original form or deflated anew by a thread pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InjectionBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int entries;
+
+    @Param({"stored", "deflated", "mixed"})
+    public String compression;
+
+    @Param({"original", "deflate"})
+    public String recompression;
+
+    private File sourceJar, targetJar;
+
+    private ExecutorService executorService;
+
+    private ModuleInjector injector;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        sourceJar = File.createTempFile("source", ".jar");
+        targetJar = File.createTempFile("target", ".jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        Random random = new Random(0);
+        byte[] content = new byte[512];
+        JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(sourceJar), manifest);
+        try {
+            for (int index = 0; index < entries; index++) {
+                for (int position = 0; position < content.length; position++) {
+                    content[position] = (byte) ('a' + random.nextInt(8));
+                }
+                ZipEntry entry = new ZipEntry("benchmark/pkg" + (index % 1000) + "/Type" + index + ".class");
+                if (compression.equals("stored") || compression.equals("mixed") && index % 2 == 0) {
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCompressedSize(content.length);
+                    entry.setCrc(crc.getValue());
+                } else if (!compression.equals("deflated") && !compression.equals("mixed")) {
+                    throw new IllegalArgumentException("Unknown compression: " + compression);
+                }
+                outputStream.putNextEntry(entry);
+                outputStream.write(content);
+                outputStream.closeEntry();
+            }
+        } finally {
+            outputStream.close();
+        }
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "benchmark.module";
+        definition.exports = "benchmark.pkg0";
+        definition.detectPackages = true;
+        SortedMap<Integer, ModuleDefinition> definitions = new TreeMap<Integer, ModuleDefinition>();
+        definitions.put(9, definition);
+        executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        ModuleInjector.Compression compression;
+        if (recompression.equals("original")) {
+            compression = new ModuleInjector.Compression.Original();
+        } else if (recompression.equals("deflate")) {
+            compression = new ModuleInjector.Compression() {
+                @Override
+                public int level(JarIndex.Entry entry) {
+                    return Deflater.DEFAULT_COMPRESSION;
+                }
+            };
+        } else {
+            throw new IllegalArgumentException("Unknown recompression: " + recompression);
+        }
+        injector = new ModuleInjector(definitions,
+                false,
+                true,
+                new ModuleInjectMojo.JarEntryCreator.Simple(),
+                false,
+                compression,
+                executorService,
+                new Metrics(),
+                new SystemStreamLog());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdownNow();
+        sourceJar.delete();
+        targetJar.delete();
+    }
+
+    @Benchmark
+    public long inject() throws IOException, MojoExecutionException {
+        JarIndex index = JarIndex.of(sourceJar);
+        try {
+            RandomAccessFile target = new RandomAccessFile(targetJar, "rw");
+            try {
+                target.setLength(0);
+                ModuleContent content = new ModuleContent();
+                for (JarIndex.Entry entry : index.entries()) {
+                    String aPackage = ModuleScanner.toPackage(entry.name);
+                    if (aPackage != null) {
+                        content.packages.add(aPackage);
+                    }
+                }
+                injector.copy(index, content, target.getChannel(), sourceJar.toString());
+                return target.length();
+            } finally {
+                target.close();
+            }
+        } finally {
+            index.close();
+        }
+    }
+}
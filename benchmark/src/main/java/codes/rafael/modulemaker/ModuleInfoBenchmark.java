@@ -0,0 +1,73 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the creation of a {@code module-info.class} file from a configuration with many packages, exports and
+ * qualified exports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModuleInfoBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int packages;
+
+    private ModuleDefinition definition;
+
+    private ModuleContent content;
+
+    private SystemStreamLog log;
+
+    @Setup
+    public void setup() {
+        definition = new ModuleDefinition();
+        definition.name = "benchmark.module";
+        definition.version = "1.0";
+        StringBuilder packages = new StringBuilder(), exports = new StringBuilder(), modules = new StringBuilder();
+        definition.qualifiedExports = new ArrayList<QualifiedPackage>();
+        for (int index = 0; index < 10; index++) {
+            modules.append(index == 0 ? "" : ",").append("other.module").append(index);
+        }
+        for (int index = 0; index < this.packages; index++) {
+            packages.append(index == 0 ? "" : ",").append("benchmark.module.pkg").append(index);
+            if (index % 2 == 0) {
+                exports.append(index == 0 ? "" : ",").append("benchmark.module.pkg").append(index);
+            } else if (index % 4 == 1) {
+                QualifiedPackage qualifiedPackage = new QualifiedPackage();
+                qualifiedPackage.packages = "benchmark.module.pkg" + index;
+                qualifiedPackage.modules = modules.toString();
+                definition.qualifiedExports.add(qualifiedPackage);
+            }
+        }
+        definition.packages = packages.toString();
+        definition.exports = exports.toString();
+        definition.requires = "java.sql,java.logging";
+        content = new ModuleContent();
+        log = new SystemStreamLog();
+    }
+
+    @Benchmark
+    public byte[] makeModuleInfo() throws MojoExecutionException {
+        return definition.toModuleInfo(9, content, log);
+    }
+}
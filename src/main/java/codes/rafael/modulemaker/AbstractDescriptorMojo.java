@@ -0,0 +1,61 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * A Maven plugin that creates {@code module-info.class} files for one or more Java versions, either within a folder
+ * or within jar files.
+ */
+public abstract class AbstractDescriptorMojo extends AbstractMeasuredMojo {
+
+    /**
+     * The Java version in which the {@code module-info.class} file should be compiled. If a comma-separated list of
+     * versions is specified, a {@code module-info.class} file is created for each version. Unless {@code multirelease}
+     * is set to {@code true}, the file of the lowest version is placed in the root while the others are placed in
+     * {@code META-INF/versions/[java]/}.
+     */
+    @Parameter(name = "java-version", defaultValue = "9")
+    protected String javaVersion;
+
+    /**
+     * Determines if the {@code module-info.class} is added as a class file of a multi-release jar file.
+     * To function correctly, using this option requires a manifest declaring {@code Multi-Release: true}.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    protected boolean multirelease;
+
+    /**
+     * Determines if a folder entry should be created for a {@code module-info.class} file that is placed in a multi-release
+     * jar if {@code META-INF/versions/[java]/} does not exist. Only applies if a jar file is written.
+     */
+    @Parameter(defaultValue = "true")
+    protected boolean createMultiReleaseFolderEntry;
+
+    /**
+     * Defines an output timestamp for JAR entries. Only applies if a jar file is written.
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    protected String outputTimestamp;
+
+    /**
+     * If set to {@code true}, all entries of a written jar file, including the copied ones, are written with the
+     * {@code outputTimestamp} and the extra fields of a created entry, and in the order of their names following the
+     * manifest. This way, a written jar file only depends on the content of its source jar. Requires an
+     * {@code outputTimestamp}. Only applies if a jar file is written.
+     */
+    @Parameter(defaultValue = "false")
+    protected boolean reproducible;
+
+    /**
+     * Returns the creator of the entries of a written jar file, or fails if a reproducible jar file is requested
+     * without an output timestamp.
+     */
+    protected ModuleInjectMojo.JarEntryCreator creator() throws MojoExecutionException {
+        ModuleInjectMojo.JarEntryCreator creator = ModuleInjectMojo.creator(outputTimestamp);
+        if (reproducible && creator.metadata() == null) {
+            throw new MojoExecutionException("Reproducible jar files require an outputTimestamp");
+        }
+        return creator;
+    }
+}
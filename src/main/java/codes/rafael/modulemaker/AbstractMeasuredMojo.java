@@ -0,0 +1,67 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A Maven plugin that records the phase timings and counters of an execution, also if the execution fails.
+ */
+public abstract class AbstractMeasuredMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    protected MavenProject project;
+
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true, required = true)
+    private MojoExecution execution;
+
+    /**
+     * A folder to which the phase timings and counters of an execution are written in JSON format, for example
+     * {@code ${project.build.directory}/modulemaker}. Every execution writes a file named after its goal and execution
+     * id. Regardless of this folder, a summary of the timings is logged at info level and all metrics at debug level.
+     */
+    @Parameter(name = "metrics-directory")
+    private String metricsDirectory;
+
+    /**
+     * If set to {@code true}, the plugin is not executed.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean skip;
+
+    protected Metrics metrics;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping " + execution.getGoal() + " as the execution is explicitly skipped.");
+            return;
+        }
+        metrics = new Metrics();
+        try {
+            doExecute();
+        } finally {
+            metrics.log(getLog());
+            if (metricsDirectory != null) {
+                File metricsFile = new File(metricsDirectory, execution.getGoal() + "-" + execution.getExecutionId() + ".json");
+                try {
+                    metrics.write(metricsFile, execution.getGoal(), execution.getExecutionId(), project.getId());
+                } catch (IOException e) {
+                    getLog().warn("Could not write metrics to " + metricsFile, e);
+                }
+            }
+        }
+    }
+
+    protected String pluginVersion() {
+        return execution.getMojoDescriptor().getPluginDescriptor().getVersion();
+    }
+
+    protected abstract void doExecute() throws MojoExecutionException, MojoFailureException;
+}
@@ -1,30 +1,37 @@
 package codes.rafael.modulemaker;
 
-import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.ModuleVisitor;
-import org.objectweb.asm.Opcodes;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.HashSet;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public abstract class AbstractModuleMojo extends AbstractMojo {
+public abstract class AbstractModuleMojo extends AbstractDescriptorMojo {
 
     /**
-     * The Java version in which the {@code module-info.class} file should be compiled.
+     * A list of Java versions for which a {@code module-info.class} file is created in addition to those that are
+     * named by {@code java-version}, each with optional overrides of the module's exports, opens, requires, uses,
+     * provides, packages and main class.
      */
-    @Parameter(name = "java-version", defaultValue = "9")
-    protected int javaVersion;
+    @Parameter
+    private List<Release> releases;
 
     /**
      * The name of the module.
@@ -38,13 +45,6 @@ public abstract class AbstractModuleMojo extends AbstractMojo {
     @Parameter
     private String version;
 
-    /**
-     * Determines if the {@code module-info.class} is added as a class file of a multi-release jar file.
-     * To function correctly, using this option requires a manifest declaring {@code Multi-Release: true}.
-     */
-    @Parameter(required = true, defaultValue = "false")
-    protected boolean multirelease;
-
     /**
      * A comma-separated list of packages of the module. This attribute is optional but offers an optimization
      * that is normally applied by the Java JAR tool. By naming all packages, the runtime does not need to scan
@@ -53,6 +53,13 @@ public abstract class AbstractModuleMojo extends AbstractMojo {
     @Parameter
     private String packages;
 
+    /**
+     * If set to {@code true}, the packages of the module are discovered from the module's files and added to any
+     * explicitly named packages. All packages are then listed in alphabetical order.
+     */
+    @Parameter(name = "detect-packages", defaultValue = "false")
+    protected boolean detectPackages;
+
     /**
      * A comma-separated list of required modules.
      */
@@ -65,6 +72,32 @@ public abstract class AbstractModuleMojo extends AbstractMojo {
     @Parameter(name = "static-requires")
     private String staticRequires;
 
+    /**
+     * A comma-separated list of required modules for which the SHA-256 hash of the module's jar file is recorded in
+     * the {@code ModuleHashes} attribute, such that a mismatching module is rejected when the module graph is resolved,
+     * for example by {@code jlink}. Every module must be resolved from a packaged compile dependency of the project.
+     */
+    @Parameter(name = "hash-requires")
+    private String hashRequires;
+
+    private Map<String, byte[]> hashes;
+
+    /**
+     * If set to {@code true}, the required modules are inferred from the types that are referenced by the module's
+     * class files. Referenced packages are resolved against the modules of the Java platform and the project's
+     * compile dependencies. Optional dependencies and dependencies in the {@code provided} scope are required
+     * statically. Explicitly required modules take precedence over inferred modules.
+     */
+    @Parameter(name = "infer-requires", defaultValue = "false")
+    protected boolean inferRequires;
+
+    /**
+     * A directory in which an index of the module's class files is retained between builds when required modules
+     * are inferred. Only class files that changed since the index was written are parsed anew.
+     */
+    @Parameter(name = "index-directory", defaultValue = "${project.build.directory}/modulemaker")
+    private String indexDirectory;
+
     /**
      * A comma-separated list of exported packages.
      */
@@ -108,148 +141,165 @@ public abstract class AbstractModuleMojo extends AbstractMojo {
     private List<Provide> provides;
 
     /**
-     * If set to {@code true}, the plugin is not executed.
+     * If set to {@code true}, provided services are discovered from the service registrations in
+     * {@code META-INF/services} of the module. Explicitly provided services take precedence over discovered
+     * registrations of the same service.
      */
-    @Parameter(required = true, defaultValue = "false")
-    private boolean skip;
+    @Parameter(name = "detect-services", defaultValue = "false")
+    protected boolean detectServices;
 
-    @Override
-    public void execute() throws MojoExecutionException, MojoFailureException {
-        if (skip) {
-            getLog().info("Skipping module-info creation as the creation is explicitly skipped.");
-            return;
-        } else if (javaVersion < 9) {
-            throw new MojoExecutionException("Invalid Java version for module-info: " + javaVersion);
-        }
-        doExecute();
+    protected SortedMap<Integer, ModuleDefinition> definitions() throws MojoExecutionException {
+        return definition().definitions(javaVersion, releases);
     }
 
-    protected abstract void doExecute() throws MojoExecutionException, MojoFailureException;
-
-    protected String filename() {
-        return (multirelease ? ("META-INF/versions/" + javaVersion + "/") : "") + "module-info.class";
+    protected ModuleDefinition definition() {
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = name;
+        definition.version = version;
+        definition.packages = packages;
+        definition.detectPackages = detectPackages;
+        definition.requires = requires;
+        definition.staticRequires = staticRequires;
+        definition.inferRequires = inferRequires;
+        definition.exports = exports;
+        definition.opens = opens;
+        definition.qualifiedExports = qualifiedExports;
+        definition.qualifiedOpens = qualifiedOpens;
+        definition.mainClass = mainClass;
+        definition.uses = uses;
+        definition.provides = provides;
+        definition.detectServices = detectServices;
+        return definition;
     }
 
-    protected byte[] makeModuleInfo() throws MojoExecutionException {
-        ClassWriter classWriter = new ClassWriter(0);
-        classWriter.visit(44 + javaVersion, Opcodes.ACC_MODULE, "module-info", null, null, null);
-        ModuleVisitor moduleVisitor = classWriter.visitModule(name, 0, version);
-        if (mainClass != null) {
-            moduleVisitor.visitMainClass(mainClass.trim().replace('.', '/'));
-        }
-        if (packages != null) {
-            Set<String> previousPackages = new HashSet<String>();
-            for (String aPackage : packages.split(",")) {
-                if (!previousPackages.add(aPackage.trim())) {
-                    throw new MojoExecutionException("Duplicate package: " + aPackage.trim());
-                }
-                moduleVisitor.visitPackage(aPackage.trim().replace('.', '/'));
+    protected void fingerprint(MessageDigest digest) throws MojoExecutionException, MojoFailureException {
+        StringBuilder fingerprint = new StringBuilder();
+        ModuleDefinition.append(fingerprint, "java-version", javaVersion);
+        ModuleDefinition.append(fingerprint, "multirelease", String.valueOf(multirelease));
+        definition().fingerprint(fingerprint);
+        if (releases != null) {
+            for (Release release : releases) {
+                ModuleDefinition.append(fingerprint, "release", String.valueOf(release.javaVersion));
+                definition().override(release).fingerprint(fingerprint);
             }
         }
-        Set<String> previousRequires = new HashSet<String>();
-        if (requires != null) {
-            for (String module : requires.split(",")) {
-                if (!previousRequires.add(module.trim())) {
-                    throw new MojoExecutionException("Duplicate require: " + module.trim());
-                }
-                moduleVisitor.visitRequire(module.trim(), 0, null);
-            }
+        for (Map.Entry<String, byte[]> entry : hashes().entrySet()) {
+            ModuleDefinition.append(fingerprint, "hash-requires", entry.getKey());
+            ModuleDefinition.append(fingerprint, "hash-requires", ModuleHasher.toHex(entry.getValue()));
         }
-        if (staticRequires != null) {
-            for (String module : staticRequires.split(",")) {
-                if (!previousRequires.add(module.trim())) {
-                    throw new MojoExecutionException("Duplicate require: " + module.trim());
-                }
-                moduleVisitor.visitRequire(module.trim(), Opcodes.ACC_STATIC_PHASE, null);
-            }
+        if (inferRequires || hashRequires != null) {
+            dependencies(fingerprint, project.getArtifacts());
         }
-        if (!previousRequires.contains("java.base")) {
-            moduleVisitor.visitRequire("java.base", Opcodes.ACC_MANDATED, null);
+        try {
+            digest.update(fingerprint.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
         }
-        Set<String> previousExports = new HashSet<String>();
-        if (exports != null) {
-            for (String aPackage : exports.split(",")) {
-                if (!previousExports.add(aPackage.trim())) {
-                    throw new MojoExecutionException("Duplicate export: " + aPackage.trim());
-                }
-                moduleVisitor.visitExport(aPackage.trim().replace('.', '/'), 0, (String[]) null);
-            }
+    }
+
+    /**
+     * Appends the resolved dependencies of the project to a fingerprint as the required modules are resolved from
+     * them. Jar files are identified by their content while directories are identified by their location and
+     * modification time.
+     */
+    static void dependencies(StringBuilder fingerprint, Collection<Artifact> artifacts) throws MojoFailureException {
+        Map<String, Artifact> sorted = new TreeMap<String, Artifact>();
+        for (Artifact artifact : artifacts) {
+            sorted.put(artifact.getId(), artifact);
         }
-        if (qualifiedExports != null) {
-            for (QualifiedPackage qualifiedPackage : qualifiedExports) {
-                String[] modules = qualifiedPackage.modules.split(",");
-                Set<String> previousModules = new HashSet<String>();
-                for (int index = 0; index < modules.length; index++) {
-                    if (!previousModules.add(modules[index].trim())) {
-                        throw new MojoExecutionException("Duplicate module: " + modules[index].trim());
-                    }
-                    modules[index] = modules[index].trim();
-                }
-                for (String aPackage : qualifiedPackage.packages.split(",")) {
-                    if (!previousExports.add(aPackage.trim())) {
-                        throw new MojoExecutionException("Duplicate export: " + aPackage.trim());
-                    }
-                    moduleVisitor.visitExport(aPackage.trim().replace('.', '/'), 0, modules);
+        for (Artifact artifact : sorted.values()) {
+            ModuleDefinition.append(fingerprint, "dependency", artifact.getId());
+            ModuleDefinition.append(fingerprint, "dependency", artifact.getScope() + ":" + artifact.isOptional());
+            File file = artifact.getFile();
+            if (file == null) {
+                continue;
+            } else if (file.isFile()) {
+                try {
+                    ModuleDefinition.append(fingerprint, "dependency", ModuleHasher.toHex(ModuleHasher.hash(file)));
+                } catch (IOException e) {
+                    throw new MojoFailureException("Could not hash dependency " + file, e);
                 }
+            } else {
+                ModuleDefinition.append(fingerprint, "dependency", file.getAbsolutePath() + ":" + file.lastModified());
             }
         }
-        Set<String> previousOpens = new HashSet<String>();
-        if (opens != null) {
-            for (String aPackage : opens.split(",")) {
-                if (!previousOpens.add(aPackage.trim())) {
-                    throw new MojoExecutionException("Duplicate export: " + aPackage.trim());
-                }
-                moduleVisitor.visitOpen(aPackage.trim().replace('.', '/'), 0, (String[]) null);
-            }
+    }
+
+    protected ModuleContent scan(File directory) throws MojoExecutionException, MojoFailureException {
+        return scan(directory, null, directory.getName());
+    }
+
+    protected ModuleContent scan(JarIndex index, String name) throws MojoExecutionException, MojoFailureException {
+        return scan(null, index, name);
+    }
+
+    private ModuleContent scan(File directory, JarIndex index, String name) throws MojoExecutionException, MojoFailureException {
+        Map<String, byte[]> hashes = hashes();
+        long started = System.nanoTime();
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            ModuleContent content = definition().scan(directory,
+                    index,
+                    executorService,
+                    inferRequires ? ModuleResolver.of(project.getArtifacts(), executorService, getLog()) : null,
+                    indexDirectory == null ? null : new File(indexDirectory, name + ".index"),
+                    getLog());
+            content.hashes.putAll(hashes);
+            return content;
+        } catch (IOException e) {
+            throw new MojoFailureException("Could not scan module content: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while scanning module content", e);
+        } finally {
+            executorService.shutdownNow();
+            metrics.time("scan", started);
         }
-        if (qualifiedOpens != null) {
-            for (QualifiedPackage qualifiedPackage : qualifiedOpens) {
-                String[] modules = qualifiedPackage.modules.split(",");
-                Set<String> previousModules = new HashSet<String>();
-                for (int index = 0; index < modules.length; index++) {
-                    if (!previousModules.add(modules[index].trim())) {
-                        throw new MojoExecutionException("Duplicate module: " + modules[index].trim());
-                    }
-                    modules[index] = modules[index].trim();
-                }
-                for (String aPackage : qualifiedPackage.packages.split(",")) {
-                    if (!previousOpens.add(aPackage.trim())) {
-                        throw new MojoExecutionException("Duplicate export: " + aPackage.trim());
-                    }
-                    moduleVisitor.visitOpen(aPackage.trim().replace('.', '/'), 0, modules);
-                }
-            }
+    }
+
+    /**
+     * Returns the hashes of the modules that are named by {@code hash-requires}, which are computed once per execution.
+     */
+    protected Map<String, byte[]> hashes() throws MojoExecutionException, MojoFailureException {
+        if (hashes != null) {
+            return hashes;
+        } else if (hashRequires == null) {
+            hashes = Collections.emptyMap();
+            return hashes;
         }
-        if (uses != null) {
-            Set<String> previousUses = new HashSet<String>();
-            for (String type : uses.split(",")) {
-                if (!previousUses.add(type.trim())) {
-                    throw new MojoExecutionException("Duplicate use: " + type.trim());
+        long started = System.nanoTime();
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            ModuleResolver resolver = ModuleResolver.of(project.getArtifacts(), executorService, getLog());
+            Map<String, File> modules = new LinkedHashMap<String, File>();
+            for (String module : hashRequires.split(",")) {
+                File file = resolver.locate(module.trim());
+                if (file == null || !file.isFile()) {
+                    throw new MojoExecutionException("Cannot hash module " + module.trim() + " that is not resolved from a packaged dependency");
+                } else if (modules.put(module.trim(), file) != null) {
+                    throw new MojoExecutionException("Duplicate hashed module: " + module.trim());
                 }
-                moduleVisitor.visitUse(type.trim().replace('.', '/'));
             }
+            hashes = ModuleHasher.hash(modules, executorService);
+            metrics.count("modules.hashed", hashes.size());
+            return hashes;
+        } catch (IOException e) {
+            throw new MojoFailureException("Could not hash required modules", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while hashing required modules", e);
+        } finally {
+            executorService.shutdownNow();
+            metrics.time("hash", started);
         }
-        if (provides != null) {
-            Set<String> previousServices = new HashSet<String>();
-            for (Provide provide : provides) {
-                String[] providers = provide.providers.split(",");
-                Set<String> previousProviders = new HashSet<String>();
-                for (int index = 0; index < providers.length; index++) {
-                    if (!previousProviders.add(providers[index].trim())) {
-                        throw new MojoExecutionException("Duplicate provider: " + providers[index].trim());
-                    }
-                    providers[index] = providers[index].trim().replace('.', '/');
-                }
-                for (String type : provide.services.split(",")) {
-                    if (!previousServices.add(type.trim())) {
-                        throw new MojoExecutionException("Duplicate service: " + type.trim());
-                    }
-                    moduleVisitor.visitProvide(type.trim().replace('.', '/'), providers);
-                }
-            }
+    }
+
+    protected Map<String, byte[]> makeModuleInfos(ModuleContent content) throws MojoExecutionException {
+        long started = System.nanoTime();
+        try {
+            return ModuleDefinition.toModuleInfos(definitions(), multirelease, content, getLog());
+        } finally {
+            metrics.time("descriptor", started);
         }
-        moduleVisitor.visitEnd();
-        classWriter.visitEnd();
-        return classWriter.toByteArray();
     }
 }
@@ -0,0 +1,17 @@
+package codes.rafael.modulemaker;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An executor that runs tasks on the calling thread, for example such that a jar file is processed entirely on a
+ * worker thread without competing for the threads of a pool.
+ */
+enum DirectExecutor implements Executor {
+
+    INSTANCE;
+
+    @Override
+    public void execute(Runnable command) {
+        command.run();
+    }
+}
@@ -0,0 +1,204 @@
+package codes.rafael.modulemaker;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes the entries of jar files in the order in which they are added while entries that are compressed anew are
+ * inflated and deflated concurrently by an executor. Only a limited number of entries and bytes is processed ahead
+ * of the writer such that the memory that is consumed by compressed entries is bounded. As the compressed form of an
+ * entry only depends on its content and compression level, the written file is identical to a file that is written
+ * sequentially.
+ */
+class EntryPipeline {
+
+    /**
+     * Indicates that an entry is copied in its original form.
+     */
+    static final int ORIGINAL = -3;
+
+    /**
+     * Indicates that an entry is stored without compression.
+     */
+    static final int STORED = -2;
+
+    private final JarWriter writer;
+
+    private final Executor executor;
+
+    private final int window;
+
+    private final long capacity;
+
+    private final Deque<Pending> pending = new ArrayDeque<Pending>();
+
+    private long buffered;
+
+    private int copied, compressed;
+
+    EntryPipeline(JarWriter writer, Executor executor, int window, long capacity) {
+        this.writer = writer;
+        this.executor = executor;
+        this.window = window;
+        this.capacity = capacity;
+    }
+
+    void copy(JarIndex index, JarIndex.Entry entry) throws IOException {
+        add(index, entry, ORIGINAL);
+    }
+
+    /**
+     * Adds an entry with a compression level that is either {@link #ORIGINAL}, {@link #STORED} or a level of the
+     * {@link Deflater}.
+     */
+    void add(JarIndex index, JarIndex.Entry entry, int level) throws IOException {
+        boolean compressed = level != ORIGINAL && !(entry.isDirectory() && entry.size == 0);
+        while (!pending.isEmpty() && (pending.size() >= window || compressed && buffered + entry.size > capacity)) {
+            write(pending.removeFirst());
+        }
+        FutureTask<Compressed> task;
+        if (compressed) {
+            task = new FutureTask<Compressed>(new Compression(index, entry, level));
+            buffered += entry.size;
+            executor.execute(task);
+        } else {
+            task = null;
+        }
+        pending.addLast(new Pending(index, entry, task));
+    }
+
+    void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            write(pending.removeFirst());
+        }
+    }
+
+    int copied() {
+        return copied;
+    }
+
+    int compressed() {
+        return compressed;
+    }
+
+    /**
+     * Cancels all entries that were not yet written.
+     */
+    void cancel() {
+        for (Pending element : pending) {
+            if (element.task != null) {
+                element.task.cancel(true);
+            }
+        }
+        pending.clear();
+        buffered = 0;
+    }
+
+    private void write(Pending element) throws IOException {
+        if (element.task == null) {
+            writer.copy(element.index, element.entry);
+            copied++;
+            return;
+        }
+        buffered -= element.entry.size;
+        Compressed compressed;
+        try {
+            compressed = element.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing " + element.entry.name);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        writer.write(element.index, element.entry, compressed.method, compressed.data, compressed.length);
+        this.compressed++;
+    }
+
+    private static class Pending {
+
+        private final JarIndex index;
+
+        private final JarIndex.Entry entry;
+
+        private final FutureTask<Compressed> task;
+
+        private Pending(JarIndex index, JarIndex.Entry entry, FutureTask<Compressed> task) {
+            this.index = index;
+            this.entry = entry;
+            this.task = task;
+        }
+    }
+
+    private static class Compression implements Callable<Compressed> {
+
+        private final JarIndex index;
+
+        private final JarIndex.Entry entry;
+
+        private final int level;
+
+        private Compression(JarIndex index, JarIndex.Entry entry, int level) {
+            this.index = index;
+            this.entry = entry;
+            this.level = level;
+        }
+
+        @Override
+        public Compressed call() throws IOException {
+            byte[] content = index.read(entry);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if ((int) crc.getValue() != entry.crc) {
+                throw new IOException("Checksum mismatch for " + entry.name);
+            }
+            if (level == STORED) {
+                return new Compressed(ZipEntry.STORED, content, content.length);
+            }
+            // The buffer is sized to the worst-case expansion of deflated data such that it rarely needs to grow.
+            byte[] data = new byte[content.length + (content.length >> 12) + (content.length >> 14) + (content.length >> 25) + 64];
+            Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(content);
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == data.length) {
+                        byte[] resized = new byte[data.length * 2];
+                        System.arraycopy(data, 0, resized, 0, length);
+                        data = resized;
+                    }
+                    length += deflater.deflate(data, length, data.length - length);
+                }
+                return new Compressed(ZipEntry.DEFLATED, data, length);
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    private static class Compressed {
+
+        private final int method;
+
+        private final byte[] data;
+
+        private final int length;
+
+        private Compressed(int method, byte[] data, int length) {
+            this.method = method;
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package codes.rafael.modulemaker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A cache of modularized jar files that are stored by a key that is derived from the content of the source jar and
+ * the effective configuration. The cache is limited in size where the least recently used jar files are evicted.
+ * A cache directory can be shared by concurrent builds where a jar file that is evicted concurrently is considered
+ * to be missing.
+ */
+class JarCache {
+
+    private static final String SUFFIX = ".jar";
+
+    /**
+     * The version of the cache format which must be incremented if the derivation of a cache key changes.
+     */
+    static final int FORMAT = 1;
+
+    private final File directory;
+
+    private final long maximumSize;
+
+    JarCache(File directory, long maximumSize) {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+    }
+
+    static void update(MessageDigest digest, File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[1 << 16];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    static String toKey(MessageDigest digest) {
+        return ModuleHasher.toHex(digest.digest());
+    }
+
+    boolean restore(String key, File target) throws IOException {
+        File cached = new File(directory, key + SUFFIX);
+        if (!cached.isFile()) {
+            return false;
+        }
+        try {
+            copy(cached, target);
+        } catch (FileNotFoundException ignored) {
+            return false;
+        }
+        if (!cached.setLastModified(System.currentTimeMillis()) && cached.isFile()) {
+            throw new IOException("Could not mark cached jar as recently used: " + cached);
+        }
+        return true;
+    }
+
+    void store(String key, File source) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create cache directory: " + directory);
+        }
+        File temporary = File.createTempFile(key, ".tmp", directory);
+        try {
+            copy(source, temporary);
+            File cached = new File(directory, key + SUFFIX);
+            if (!temporary.renameTo(cached) && !cached.isFile()) {
+                throw new IOException("Could not store jar in cache: " + cached);
+            }
+        } finally {
+            if (temporary.isFile() && !temporary.delete()) {
+                temporary.deleteOnExit();
+            }
+        }
+        evict();
+    }
+
+    private void evict() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Could not list cache directory: " + directory);
+        }
+        // Modification times are read only once as they might be altered concurrently while sorting.
+        final Map<File, Long> modified = new HashMap<File, Long>();
+        for (File file : files) {
+            modified.put(file, file.lastModified());
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                long difference = modified.get(right) - modified.get(left);
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        long size = 0;
+        for (File file : files) {
+            if (!file.isFile() || !file.getName().endsWith(SUFFIX)) {
+                continue;
+            }
+            size += file.length();
+            if (size > maximumSize && !file.delete() && file.isFile()) {
+                throw new IOException("Could not evict cached jar: " + file);
+            }
+        }
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        FileChannel in = new FileInputStream(source).getChannel();
+        try {
+            FileChannel out = new FileOutputStream(target).getChannel();
+            try {
+                long position = 0, size = in.size();
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
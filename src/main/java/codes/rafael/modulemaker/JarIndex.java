@@ -0,0 +1,576 @@
+package codes.rafael.modulemaker;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * An index of the entries of a jar file as they are listed by the file's central directory. The index allows
+ * for copying the compressed representation of an entry without inflating it. Zip64 archives are supported where
+ * any size, offset or entry count is read from the Zip64 records if the regular record holds a placeholder.
+ */
+class JarIndex implements Closeable {
+
+    static final int LOCAL_FILE_HEADER = 0x04034b50, CENTRAL_FILE_HEADER = 0x02014b50, END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+    static final int LOCAL_FILE_HEADER_SIZE = 30, CENTRAL_FILE_HEADER_SIZE = 46, END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+
+    static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE = 20;
+
+    static final int ZIP64_EXTRA = 0x0001, ZIP64_VERSION = 45;
+
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final MemoryCache<MemoryCache.FileKey, JarIndex> CENTRAL_DIRECTORIES = new MemoryCache<MemoryCache.FileKey, JarIndex>(256);
+
+    private final Source source;
+
+    private final List<Entry> entries;
+
+    private final Trailer trailer;
+
+    private JarIndex(Source source, List<Entry> entries, Trailer trailer) {
+        this.source = source;
+        this.entries = entries;
+        this.trailer = trailer;
+    }
+
+    /**
+     * Returns an index of a jar file where the central directory is only parsed if it was not parsed before for a file
+     * with the same path, size and modification time within the current JVM. As a file can be rewritten without
+     * altering its size or modification time, the cached entries are only reused if the file's trailer still describes
+     * the same central directory.
+     */
+    static JarIndex of(File file) throws IOException {
+        MemoryCache.FileKey key = MemoryCache.FileKey.of(file);
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            Source source = new Source.OfChannel(channel);
+            JarIndex cached = CENTRAL_DIRECTORIES.get(key);
+            if (cached != null && cached.trailer.isCurrent(source)) {
+                return new JarIndex(source, cached.entries, cached.trailer);
+            }
+            JarIndex index = of(source);
+            if (key.equals(MemoryCache.FileKey.of(file))) {
+                CENTRAL_DIRECTORIES.put(key, new JarIndex(null, index.entries, index.trailer));
+            }
+            return index;
+        } catch (IOException e) {
+            channel.close();
+            throw new IOException("Could not read central directory of " + file + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static JarIndex of(FileChannel channel) throws IOException {
+        return of(new Source.OfChannel(channel));
+    }
+
+    static JarIndex of(byte[] bytes) throws IOException {
+        return of(new Source.OfBytes(bytes));
+    }
+
+    static JarIndex of(Source source) throws IOException {
+        Trailer trailer = Trailer.of(source);
+        long count = trailer.count, length = trailer.length, offset = trailer.offset;
+        if (length > Integer.MAX_VALUE || count > length / CENTRAL_FILE_HEADER_SIZE) {
+            throw new IOException("Invalid central directory of " + length + " bytes for " + count + " entries");
+        }
+        ByteBuffer directory = source.slice(offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+        List<Entry> entries = new ArrayList<Entry>((int) count);
+        int position = 0;
+        while (position + CENTRAL_FILE_HEADER_SIZE <= length && directory.getInt(position) == CENTRAL_FILE_HEADER) {
+            int nameLength = directory.getShort(position + 28) & 0xFFFF,
+                    extraLength = directory.getShort(position + 30) & 0xFFFF,
+                    commentLength = directory.getShort(position + 32) & 0xFFFF;
+            if (position + CENTRAL_FILE_HEADER_SIZE + nameLength + extraLength + commentLength > length) {
+                throw new IOException("Central file header at " + (offset + position) + " exceeds the central directory");
+            }
+            byte[] name = new byte[nameLength],
+                    extra = extraLength == 0 ? EMPTY : new byte[extraLength],
+                    comment = commentLength == 0 ? EMPTY : new byte[commentLength];
+            directory.position(position + CENTRAL_FILE_HEADER_SIZE);
+            directory.get(name).get(extra).get(comment);
+            long compressedSize = directory.getInt(position + 20) & ZIP64_MAGIC,
+                    uncompressedSize = directory.getInt(position + 24) & ZIP64_MAGIC,
+                    localOffset = directory.getInt(position + 42) & ZIP64_MAGIC;
+            if (compressedSize == ZIP64_MAGIC || uncompressedSize == ZIP64_MAGIC || localOffset == ZIP64_MAGIC) {
+                int field = find(extra, ZIP64_EXTRA);
+                if (field == -1) {
+                    throw new IOException("Missing Zip64 extra field for " + new String(name, "UTF-8"));
+                }
+                int fieldLength = (extra[field + 2] & 0xFF) | (extra[field + 3] & 0xFF) << 8;
+                ByteBuffer zip64 = ByteBuffer.wrap(extra, field + 4, fieldLength).order(ByteOrder.LITTLE_ENDIAN);
+                if (uncompressedSize == ZIP64_MAGIC) {
+                    uncompressedSize = readZip64(zip64, name);
+                }
+                if (compressedSize == ZIP64_MAGIC) {
+                    compressedSize = readZip64(zip64, name);
+                }
+                if (localOffset == ZIP64_MAGIC) {
+                    localOffset = readZip64(zip64, name);
+                }
+            }
+            entries.add(new Entry(name,
+                    directory.getShort(position + 4) & 0xFFFF,
+                    directory.getShort(position + 6) & 0xFFFF,
+                    directory.getShort(position + 8) & 0xFFFF,
+                    directory.getShort(position + 10) & 0xFFFF,
+                    directory.getInt(position + 12),
+                    directory.getInt(position + 16),
+                    compressedSize,
+                    uncompressedSize,
+                    directory.getShort(position + 36) & 0xFFFF,
+                    directory.getInt(position + 38),
+                    localOffset,
+                    extra,
+                    comment));
+            position += CENTRAL_FILE_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        if (entries.size() != count) {
+            throw new IOException("Central directory lists " + entries.size() + " entries but expected " + count);
+        }
+        return new JarIndex(source, Collections.unmodifiableList(entries), trailer);
+    }
+
+    private static long readZip64(ByteBuffer zip64, byte[] name) throws IOException {
+        if (zip64.remaining() < 8) {
+            throw new IOException("Truncated Zip64 extra field for " + new String(name, "UTF-8"));
+        }
+        long value = zip64.getLong();
+        if (value < 0) {
+            throw new IOException("Invalid Zip64 value " + value + " for " + new String(name, "UTF-8"));
+        }
+        return value;
+    }
+
+    /**
+     * Returns the position of the extra field with the given header id within the extra data, or {@code -1} if no
+     * such field exists.
+     */
+    static int find(byte[] extra, int id) {
+        int position = 0;
+        while (position + 4 <= extra.length) {
+            int length = (extra[position + 2] & 0xFF) | (extra[position + 3] & 0xFF) << 8;
+            if (((extra[position] & 0xFF) | (extra[position + 1] & 0xFF) << 8) == id) {
+                return position + 4 + length <= extra.length ? position : -1;
+            }
+            position += 4 + length;
+        }
+        return -1;
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    Entry get(String name) {
+        for (Entry entry : entries) {
+            if (entry.name.equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    Entry getIgnoreCase(String name) {
+        for (Entry entry : entries) {
+            if (entry.name.equalsIgnoreCase(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    long centralDirectoryOffset() {
+        return trailer.offset;
+    }
+
+    Trailer trailer() {
+        return trailer;
+    }
+
+    Source source() {
+        return source;
+    }
+
+    LocalHeader localHeader(Entry entry) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        source.read(header, entry.offset);
+        if (header.getInt(0) != LOCAL_FILE_HEADER) {
+            throw new IOException("Could not locate local file header of " + entry.name);
+        }
+        int nameLength = header.getShort(26) & 0xFFFF, extraLength = header.getShort(28) & 0xFFFF;
+        if (extraLength == 0) {
+            return new LocalHeader(EMPTY, entry.offset + LOCAL_FILE_HEADER_SIZE + nameLength);
+        }
+        ByteBuffer extra = ByteBuffer.allocate(extraLength);
+        source.read(extra, entry.offset + LOCAL_FILE_HEADER_SIZE + nameLength);
+        return new LocalHeader(extra.array(), entry.offset + LOCAL_FILE_HEADER_SIZE + nameLength + extraLength);
+    }
+
+    byte[] read(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE || entry.compressedSize > Integer.MAX_VALUE - 1) {
+            throw new IOException("Entry is too large to be read into memory: " + entry.name);
+        }
+        LocalHeader header = localHeader(entry);
+        switch (entry.method) {
+            case ZipEntry.STORED: {
+                ByteBuffer buffer = ByteBuffer.allocate((int) entry.size);
+                source.read(buffer, header.data);
+                return buffer.array();
+            }
+            case ZipEntry.DEFLATED: {
+                // The inflater requires an additional dummy byte when no zlib header is expected.
+                ByteBuffer buffer = ByteBuffer.allocate((int) entry.compressedSize + 1);
+                buffer.limit((int) entry.compressedSize);
+                source.read(buffer, header.data);
+                byte[] content = new byte[(int) entry.size];
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(buffer.array());
+                    int length = 0;
+                    while (length < content.length) {
+                        int inflated = inflater.inflate(content, length, content.length - length);
+                        if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new EOFException("Unexpected end of compressed data for " + entry.name);
+                        }
+                        length += inflated;
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Could not inflate " + entry.name + ": " + e.getMessage());
+                } finally {
+                    inflater.end();
+                }
+                return content;
+            }
+            default:
+                throw new IOException("Unsupported compression method " + entry.method + " for " + entry.name);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * An entry as described by the central directory.
+     */
+    static class Entry {
+
+        final String name;
+
+        final byte[] rawName, extra, comment;
+
+        final int versionMadeBy, versionNeeded, flags, method, time, crc, internalAttributes, externalAttributes;
+
+        final long compressedSize, size, offset;
+
+        Entry(byte[] rawName,
+              int versionMadeBy,
+              int versionNeeded,
+              int flags,
+              int method,
+              int time,
+              int crc,
+              long compressedSize,
+              long size,
+              int internalAttributes,
+              int externalAttributes,
+              long offset,
+              byte[] extra,
+              byte[] comment) {
+            try {
+                name = new String(rawName, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            this.rawName = rawName;
+            this.versionMadeBy = versionMadeBy;
+            this.versionNeeded = versionNeeded;
+            this.flags = flags;
+            this.method = method;
+            this.time = time;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.internalAttributes = internalAttributes;
+            this.externalAttributes = externalAttributes;
+            this.offset = offset;
+            this.extra = extra;
+            this.comment = comment;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /**
+     * The end of central directory record of a jar file and, if present, its Zip64 end of central directory record and
+     * locator. As these records describe the location, size and entry count of the central directory, a jar file whose
+     * records are unchanged is considered to have an unchanged central directory without reading the directory.
+     */
+    static class Trailer {
+
+        final long size, count, length, offset;
+
+        private final long[] positions;
+
+        private final byte[][] records;
+
+        private Trailer(long size, long count, long length, long offset, long[] positions, byte[][] records) {
+            this.size = size;
+            this.count = count;
+            this.length = length;
+            this.offset = offset;
+            this.positions = positions;
+            this.records = records;
+        }
+
+        static Trailer of(Source source) throws IOException {
+            long size = source.size();
+            int tail = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF);
+            ByteBuffer buffer = source.slice(size - tail, tail).order(ByteOrder.LITTLE_ENDIAN);
+            int end = -1;
+            for (int index = tail - END_OF_CENTRAL_DIRECTORY_SIZE; index >= 0; index--) {
+                if (buffer.getInt(index) == END_OF_CENTRAL_DIRECTORY) {
+                    end = index;
+                    break;
+                }
+            }
+            if (end == -1) {
+                throw new IOException("Could not locate end of central directory");
+            }
+            byte[] record = new byte[END_OF_CENTRAL_DIRECTORY_SIZE];
+            ((ByteBuffer) buffer.duplicate().position(end)).get(record);
+            long count = buffer.getShort(end + 10) & 0xFFFF;
+            long length = buffer.getInt(end + 12) & ZIP64_MAGIC, offset = buffer.getInt(end + 16) & ZIP64_MAGIC;
+            long locator = size - tail + end - ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE;
+            if ((count == 0xFFFF || length == ZIP64_MAGIC || offset == ZIP64_MAGIC) && locator >= 0) {
+                ByteBuffer zip64 = ByteBuffer.allocate(ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                zip64.limit(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE);
+                source.read(zip64, locator);
+                if (zip64.getInt(0) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+                    byte[] locatorRecord = new byte[ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE];
+                    System.arraycopy(zip64.array(), 0, locatorRecord, 0, locatorRecord.length);
+                    long position = zip64.getLong(8);
+                    if (position < 0 || position > locator - ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE) {
+                        throw new IOException("Invalid Zip64 end of central directory offset " + position);
+                    }
+                    zip64.clear();
+                    source.read(zip64, position);
+                    if (zip64.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                        throw new IOException("Could not locate Zip64 end of central directory at " + position);
+                    } else if (zip64.getLong(32) < 0 || zip64.getLong(40) < 0 || zip64.getLong(48) < 0) {
+                        throw new IOException("Invalid Zip64 end of central directory at " + position);
+                    }
+                    return new Trailer(size,
+                            zip64.getLong(32),
+                            zip64.getLong(40),
+                            zip64.getLong(48),
+                            new long[] {size - tail + end, locator, position},
+                            new byte[][] {record, locatorRecord, zip64.array()});
+                }
+            }
+            return new Trailer(size, count, length, offset, new long[] {size - tail + end}, new byte[][] {record});
+        }
+
+        /**
+         * Returns {@code true} if the source is of the same size and contains the same records at the same positions.
+         */
+        boolean isCurrent(Source source) throws IOException {
+            if (source.size() != size) {
+                return false;
+            }
+            for (int index = 0; index < positions.length; index++) {
+                ByteBuffer record = ByteBuffer.allocate(records[index].length);
+                source.read(record, positions[index]);
+                if (!Arrays.equals(record.array(), records[index])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean isCurrent(File file) throws IOException {
+            FileChannel channel = new FileInputStream(file).getChannel();
+            try {
+                return isCurrent(new Source.OfChannel(channel));
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * The variable information of a local file header that is not repeated in the central directory.
+     */
+    static class LocalHeader {
+
+        final byte[] extra;
+
+        final long data;
+
+        LocalHeader(byte[] extra, long data) {
+            this.extra = extra;
+            this.data = data;
+        }
+    }
+
+    /**
+     * A source of a jar file's bytes.
+     */
+    interface Source extends Closeable {
+
+        long size() throws IOException;
+
+        void read(ByteBuffer buffer, long position) throws IOException;
+
+        /**
+         * Returns a buffer of the given region that must not be modified.
+         */
+        ByteBuffer slice(long position, int length) throws IOException;
+
+        void transferTo(long position, long count, WritableByteChannel target) throws IOException;
+
+        class OfChannel implements Source {
+
+            /**
+             * The minimal size of a region that is memory-mapped rather than read into the heap. Mapped regions are
+             * only released once they are garbage collected, so only regions of large jar files are mapped.
+             */
+            private static final int MAPPING_THRESHOLD = 1 << 24;
+
+            private final FileChannel channel;
+
+            OfChannel(FileChannel channel) {
+                this.channel = channel;
+            }
+
+            @Override
+            public long size() throws IOException {
+                return channel.size();
+            }
+
+            @Override
+            public void read(ByteBuffer buffer, long position) throws IOException {
+                if (position < 0) {
+                    throw new EOFException("Invalid position " + position);
+                }
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position);
+                    if (read == -1) {
+                        throw new EOFException("Unexpected end of file at " + position);
+                    }
+                    position += read;
+                }
+            }
+
+            @Override
+            public ByteBuffer slice(long position, int length) throws IOException {
+                if (position < 0 || position + length > channel.size()) {
+                    throw new EOFException("Unexpected end of file at " + position);
+                } else if (length < MAPPING_THRESHOLD) {
+                    ByteBuffer buffer = ByteBuffer.allocate(length);
+                    read(buffer, position);
+                    buffer.clear();
+                    return buffer;
+                }
+                return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            }
+
+            @Override
+            public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+                if (position < 0) {
+                    throw new EOFException("Invalid position " + position);
+                }
+                while (count > 0) {
+                    long transferred = channel.transferTo(position, count, target);
+                    if (transferred <= 0) {
+                        if (position >= channel.size()) {
+                            throw new EOFException("Unexpected end of file at " + position);
+                        }
+                        continue;
+                    }
+                    position += transferred;
+                    count -= transferred;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        }
+
+        class OfBytes implements Source {
+
+            private final byte[] bytes;
+
+            OfBytes(byte[] bytes) {
+                this.bytes = bytes;
+            }
+
+            @Override
+            public long size() {
+                return bytes.length;
+            }
+
+            @Override
+            public void read(ByteBuffer buffer, long position) throws IOException {
+                if (position < 0 || position + buffer.remaining() > bytes.length) {
+                    throw new EOFException("Unexpected end of data at " + position);
+                }
+                buffer.put(bytes, (int) position, buffer.remaining());
+            }
+
+            @Override
+            public ByteBuffer slice(long position, int length) throws IOException {
+                if (position < 0 || position + length > bytes.length) {
+                    throw new EOFException("Unexpected end of data at " + position);
+                }
+                return ByteBuffer.wrap(bytes, (int) position, length).slice().asReadOnlyBuffer();
+            }
+
+            @Override
+            public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+                if (position < 0 || position + count > bytes.length) {
+                    throw new EOFException("Unexpected end of data at " + position);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, (int) position, (int) count);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+            }
+
+            @Override
+            public void close() {
+                /* do nothing */
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package codes.rafael.modulemaker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A writer for jar files that transfers entries of other jar files in their compressed form. Any local file header
+ * is written with the checksum and sizes of the central directory such that no data descriptor is required. Entries
+ * that already exist in the written file can be retained such that they are only listed in the central directory.
+ * Entries can also be written with data that was compressed anew. Zip64 extra fields and records are written for any
+ * size, offset or entry count that exceeds the regular fields, and Zip64 extra fields of copied entries are dropped
+ * otherwise. If metadata is supplied, the timestamp and extra fields of every written entry are replaced by the
+ * metadata's such that the written file does not depend on the metadata of the copied entries.
+ */
+class JarWriter {
+
+    private static final int COMPRESSION_OPTION_FLAGS = 3 << 1;
+
+    private final WritableByteChannel channel;
+
+    private final Metadata metadata;
+
+    private final List<Written> written = new ArrayList<Written>();
+
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    private final long[] values = new long[3];
+
+    private long position;
+
+    JarWriter(WritableByteChannel channel) throws IOException {
+        this(channel, null);
+    }
+
+    JarWriter(WritableByteChannel channel, Metadata metadata) throws IOException {
+        this.channel = channel;
+        this.metadata = metadata;
+        position = channel instanceof FileChannel ? ((FileChannel) channel).position() : 0;
+    }
+
+    void copy(JarIndex index, JarIndex.Entry entry) throws IOException {
+        JarIndex.LocalHeader header = index.localHeader(entry);
+        int flags = entry.flags & ~JarIndex.DATA_DESCRIPTOR_FLAG;
+        long offset = position;
+        writeLocalHeader(entry, header, entry.versionNeeded, flags, entry.method, entry.crc, entry.compressedSize, entry.size);
+        index.source().transferTo(header.data, entry.compressedSize, channel);
+        position += entry.compressedSize;
+        written.add(new Written(entry, flags, entry.versionNeeded, entry.method, entry.crc, entry.compressedSize, entry.size, offset));
+    }
+
+    void write(JarIndex index, JarIndex.Entry entry, int method, byte[] data, int length) throws IOException {
+        write(index, entry, method, entry.crc, entry.size, data, length);
+    }
+
+    /**
+     * Writes an entry with data that represents the given checksum and uncompressed size, which can differ from the
+     * entry's original content.
+     */
+    void write(JarIndex index, JarIndex.Entry entry, int method, int crc, long size, byte[] data, int length) throws IOException {
+        JarIndex.LocalHeader header = index.localHeader(entry);
+        int flags = entry.flags & ~(JarIndex.DATA_DESCRIPTOR_FLAG | COMPRESSION_OPTION_FLAGS);
+        int versionNeeded = method == ZipEntry.DEFLATED ? Math.max(entry.versionNeeded, 20) : entry.versionNeeded;
+        long offset = position;
+        writeLocalHeader(entry, header, versionNeeded, flags, method, crc, length, size);
+        ByteBuffer content = ByteBuffer.wrap(data, 0, length);
+        while (content.hasRemaining()) {
+            position += channel.write(content);
+        }
+        written.add(new Written(entry, flags, versionNeeded, method, crc, length, size, offset));
+    }
+
+    void retain(JarIndex.Entry entry) {
+        if (metadata != null) {
+            throw new IllegalStateException("Cannot retain " + entry.name + " when normalizing metadata");
+        }
+        written.add(new Written(entry, entry.flags, entry.versionNeeded, entry.method, entry.crc, entry.compressedSize, entry.size, entry.offset));
+    }
+
+    void finish() throws IOException {
+        long offset = position;
+        for (Written element : written) {
+            JarIndex.Entry entry = element.entry;
+            int count = 0;
+            if (element.size >= JarIndex.ZIP64_MAGIC) {
+                values[count++] = element.size;
+            }
+            if (element.compressedSize >= JarIndex.ZIP64_MAGIC) {
+                values[count++] = element.compressedSize;
+            }
+            if (element.offset >= JarIndex.ZIP64_MAGIC) {
+                values[count++] = element.offset;
+            }
+            byte[] extra = toExtra(metadata == null ? entry.extra : metadata.centralExtra, values, count);
+            ensure(JarIndex.CENTRAL_FILE_HEADER_SIZE + entry.rawName.length + extra.length + entry.comment.length);
+            buffer.putInt(JarIndex.CENTRAL_FILE_HEADER)
+                    .putShort((short) entry.versionMadeBy)
+                    .putShort((short) (count == 0 ? element.versionNeeded : Math.max(element.versionNeeded, JarIndex.ZIP64_VERSION)))
+                    .putShort((short) element.flags)
+                    .putShort((short) element.method)
+                    .putInt(metadata == null ? entry.time : metadata.time)
+                    .putInt(element.crc)
+                    .putInt((int) Math.min(element.compressedSize, JarIndex.ZIP64_MAGIC))
+                    .putInt((int) Math.min(element.size, JarIndex.ZIP64_MAGIC))
+                    .putShort((short) entry.rawName.length)
+                    .putShort((short) extra.length)
+                    .putShort((short) entry.comment.length)
+                    .putShort((short) 0)
+                    .putShort((short) entry.internalAttributes)
+                    .putInt(entry.externalAttributes)
+                    .putInt((int) Math.min(element.offset, JarIndex.ZIP64_MAGIC))
+                    .put(entry.rawName)
+                    .put(extra)
+                    .put(entry.comment);
+        }
+        long length = position + buffer.position() - offset;
+        if (written.size() >= 0xFFFF || offset >= JarIndex.ZIP64_MAGIC || length >= JarIndex.ZIP64_MAGIC) {
+            long record = position + buffer.position();
+            ensure(JarIndex.ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE + JarIndex.ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIZE);
+            buffer.putInt(JarIndex.ZIP64_END_OF_CENTRAL_DIRECTORY)
+                    .putLong(JarIndex.ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE - 12)
+                    .putShort((short) JarIndex.ZIP64_VERSION)
+                    .putShort((short) JarIndex.ZIP64_VERSION)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(written.size())
+                    .putLong(written.size())
+                    .putLong(length)
+                    .putLong(offset)
+                    .putInt(JarIndex.ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR)
+                    .putInt(0)
+                    .putLong(record)
+                    .putInt(1);
+        }
+        ensure(JarIndex.END_OF_CENTRAL_DIRECTORY_SIZE);
+        buffer.putInt(JarIndex.END_OF_CENTRAL_DIRECTORY)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(written.size(), 0xFFFF))
+                .putShort((short) Math.min(written.size(), 0xFFFF))
+                .putInt((int) Math.min(length, JarIndex.ZIP64_MAGIC))
+                .putInt((int) Math.min(offset, JarIndex.ZIP64_MAGIC))
+                .putShort((short) 0);
+        flush();
+    }
+
+    /**
+     * Writes a local file header where both sizes are moved to a Zip64 extra field if either size exceeds the
+     * regular fields. As the local header is written before the entry's offset is known to the central directory,
+     * the offset is never recorded locally.
+     */
+    private void writeLocalHeader(JarIndex.Entry entry,
+                                  JarIndex.LocalHeader header,
+                                  int versionNeeded,
+                                  int flags,
+                                  int method,
+                                  int crc,
+                                  long compressedSize,
+                                  long size) throws IOException {
+        boolean zip64 = compressedSize >= JarIndex.ZIP64_MAGIC || size >= JarIndex.ZIP64_MAGIC;
+        if (zip64) {
+            values[0] = size;
+            values[1] = compressedSize;
+        }
+        byte[] extra = toExtra(metadata == null ? header.extra : metadata.localExtra, values, zip64 ? 2 : 0);
+        ensure(JarIndex.LOCAL_FILE_HEADER_SIZE + entry.rawName.length + extra.length);
+        buffer.putInt(JarIndex.LOCAL_FILE_HEADER)
+                .putShort((short) (zip64 ? Math.max(versionNeeded, JarIndex.ZIP64_VERSION) : versionNeeded))
+                .putShort((short) flags)
+                .putShort((short) method)
+                .putInt(metadata == null ? entry.time : metadata.time)
+                .putInt(crc)
+                .putInt((int) (zip64 ? JarIndex.ZIP64_MAGIC : compressedSize))
+                .putInt((int) (zip64 ? JarIndex.ZIP64_MAGIC : size))
+                .putShort((short) entry.rawName.length)
+                .putShort((short) extra.length)
+                .put(entry.rawName)
+                .put(extra);
+        flush();
+    }
+
+    /**
+     * Replaces any Zip64 extra field within the given extra data by a field of the given number of values. The extra
+     * data is returned as it is if it neither contains nor requires a Zip64 extra field.
+     */
+    private static byte[] toExtra(byte[] extra, long[] values, int count) {
+        int field = JarIndex.find(extra, JarIndex.ZIP64_EXTRA);
+        if (field == -1 && count == 0) {
+            return extra;
+        }
+        int length = field == -1 ? 0 : 4 + ((extra[field + 2] & 0xFF) | (extra[field + 3] & 0xFF) << 8);
+        ByteBuffer result = ByteBuffer.allocate(extra.length - length + (count == 0 ? 0 : 4 + 8 * count)).order(ByteOrder.LITTLE_ENDIAN);
+        if (field == -1) {
+            result.put(extra);
+        } else {
+            result.put(extra, 0, field).put(extra, field + length, extra.length - field - length);
+        }
+        if (count > 0) {
+            result.putShort((short) JarIndex.ZIP64_EXTRA).putShort((short) (8 * count));
+            for (int index = 0; index < count; index++) {
+                result.putLong(values[index]);
+            }
+        }
+        return result.array();
+    }
+
+    private void ensure(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            flush();
+            if (buffer.capacity() < length) {
+                buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * The timestamp and extra fields that are written for every entry. The metadata is derived once from an entry
+     * that is written by a {@link java.util.zip.ZipOutputStream} such that it matches the metadata of created entries.
+     */
+    static class Metadata {
+
+        private final int time;
+
+        private final byte[] localExtra, centralExtra;
+
+        private Metadata(int time, byte[] localExtra, byte[] centralExtra) {
+            this.time = time;
+            this.localExtra = localExtra;
+            this.centralExtra = centralExtra;
+        }
+
+        static Metadata of(ZipEntry template) {
+            try {
+                ByteArrayOutputStream created = new ByteArrayOutputStream();
+                ZipOutputStream outputStream = new ZipOutputStream(created);
+                try {
+                    outputStream.putNextEntry(template);
+                    outputStream.closeEntry();
+                } finally {
+                    outputStream.close();
+                }
+                JarIndex index = JarIndex.of(created.toByteArray());
+                JarIndex.Entry entry = index.entries().get(0);
+                return new Metadata(entry.time, index.localHeader(entry).extra, entry.extra);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not derive metadata from " + template.getName(), e);
+            }
+        }
+    }
+
+    private static class Written {
+
+        private final JarIndex.Entry entry;
+
+        private final int flags, versionNeeded, method, crc;
+
+        private final long compressedSize, size, offset;
+
+        private Written(JarIndex.Entry entry, int flags, int versionNeeded, int method, int crc, long compressedSize, long size, long offset) {
+            this.entry = entry;
+            this.flags = flags;
+            this.versionNeeded = versionNeeded;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package codes.rafael.modulemaker;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of values that are retained between the builds of a long-lived JVM, such as the Maven daemon. Values
+ * are softly referenced such that they are reclaimed under memory pressure, and the least recently used values are
+ * evicted once the cache holds more than a maximum number of values. The cache is safe for concurrent use.
+ */
+class MemoryCache<K, V> {
+
+    private final Map<K, SoftReference<V>> values;
+
+    MemoryCache(final int maximumSize) {
+        values = new LinkedHashMap<K, SoftReference<V>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, SoftReference<V>> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    synchronized V get(K key) {
+        SoftReference<V> reference = values.get(key);
+        if (reference == null) {
+            return null;
+        }
+        V value = reference.get();
+        if (value == null) {
+            values.remove(key);
+        }
+        return value;
+    }
+
+    synchronized void put(K key, V value) {
+        values.put(key, new SoftReference<V>(value));
+    }
+
+    /**
+     * Identifies a file by its path, size and modification time such that a cached value is discarded once the file
+     * is altered.
+     */
+    static class FileKey {
+
+        private final String path;
+
+        private final long size, modified;
+
+        private FileKey(String path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        static FileKey of(File file) {
+            return new FileKey(file.getAbsolutePath(), file.length(), file.lastModified());
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (object == null || getClass() != object.getClass()) {
+                return false;
+            }
+            FileKey fileKey = (FileKey) object;
+            return size == fileKey.size && modified == fileKey.modified && path.equals(fileKey.path);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + (int) (size ^ (size >>> 32));
+            result = 31 * result + (int) (modified ^ (modified >>> 32));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the accumulated duration of the phases of an execution and counters of the processed entries and bytes.
+ * Phases and counters can be recorded concurrently.
+ */
+class Metrics {
+
+    private final ConcurrentMap<String, AtomicLong> timings = new ConcurrentSkipListMap<String, AtomicLong>();
+
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentSkipListMap<String, AtomicLong>();
+
+    /**
+     * Adds the time that elapsed since the given value of {@link System#nanoTime()} to a phase.
+     */
+    void time(String phase, long started) {
+        add(timings, phase, System.nanoTime() - started);
+    }
+
+    void count(String counter, long delta) {
+        add(counters, counter, delta);
+    }
+
+    long get(String counter) {
+        AtomicLong value = counters.get(counter);
+        return value == null ? 0 : value.get();
+    }
+
+    private static void add(ConcurrentMap<String, AtomicLong> values, String key, long delta) {
+        AtomicLong value = values.get(key);
+        if (value == null) {
+            value = new AtomicLong();
+            AtomicLong previous = values.putIfAbsent(key, value);
+            if (previous != null) {
+                value = previous;
+            }
+        }
+        value.addAndGet(delta);
+    }
+
+    /**
+     * Logs the accumulated duration of all phases and the longest phase at info level and all timings and counters
+     * at debug level, as they are written to a file if requested.
+     */
+    void log(Log log) {
+        if (timings.isEmpty()) {
+            return;
+        }
+        long total = 0, longest = -1;
+        String phase = null;
+        for (Map.Entry<String, AtomicLong> entry : timings.entrySet()) {
+            long value = entry.getValue().get();
+            total += value;
+            if (value > longest) {
+                longest = value;
+                phase = entry.getKey();
+            }
+        }
+        log.info("Spent " + toMillis(total) + " ms in " + timings.size() + " phases, most in " + phase + " ("
+                + toMillis(longest) + " ms)");
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder("Phase timings:");
+        for (Map.Entry<String, AtomicLong> entry : timings.entrySet()) {
+            message.append(' ').append(entry.getKey()).append('=').append(toMillis(entry.getValue().get())).append(" ms");
+        }
+        log.debug(message);
+        if (!counters.isEmpty()) {
+            message = new StringBuilder("Counters:");
+            for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+                message.append(' ').append(entry.getKey()).append('=').append(entry.getValue().get());
+            }
+            log.debug(message);
+        }
+    }
+
+    void write(File file, String goal, String execution, String project) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create metrics directory: " + parent);
+        }
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"goal\": ").append(quote(goal)).append(",\n");
+        json.append("  \"execution\": ").append(quote(execution)).append(",\n");
+        json.append("  \"project\": ").append(quote(project)).append(",\n");
+        json.append("  \"timingsMillis\": {");
+        boolean first = true;
+        for (Map.Entry<String, AtomicLong> entry : timings.entrySet()) {
+            json.append(first ? "\n" : ",\n").append("    ").append(quote(entry.getKey())).append(": ").append(toMillis(entry.getValue().get()));
+            first = false;
+        }
+        json.append(first ? "},\n" : "\n  },\n");
+        json.append("  \"counters\": {");
+        first = true;
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            json.append(first ? "\n" : ",\n").append("    ").append(quote(entry.getKey())).append(": ").append(entry.getValue().get());
+            first = false;
+        }
+        json.append(first ? "}\n" : "\n  }\n");
+        json.append("}\n");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000000d);
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int index = 0; index < value.length(); index++) {
+            char character = value.charAt(index);
+            if (character == '"' || character == '\\') {
+                quoted.append('\\').append(character);
+            } else if (character < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) character));
+            } else {
+                quoted.append(character);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
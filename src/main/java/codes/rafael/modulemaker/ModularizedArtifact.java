@@ -0,0 +1,32 @@
+package codes.rafael.modulemaker;
+
+import java.util.List;
+
+/**
+ * A description of a jar file into which a {@code module-info.class} file is injected.
+ */
+public class ModularizedArtifact extends ModuleDefinition {
+
+    /**
+     * The dependency of the project into which the {@code module-info.class} file is injected, specified as
+     * {@code groupId:artifactId} or as {@code groupId:artifactId:classifier}.
+     */
+    String artifact;
+
+    /**
+     * The location of the jar file into which the {@code module-info.class} file is injected if no dependency is
+     * specified.
+     */
+    String source;
+
+    /**
+     * A list of Java versions for which a {@code module-info.class} file is created in addition to those that are
+     * named by {@code java-version}, each with optional overrides of this module description.
+     */
+    List<Release> releases;
+
+    @Override
+    public String toString() {
+        return artifact == null ? String.valueOf(source) : artifact;
+    }
+}
@@ -0,0 +1,239 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A Maven plugin for injecting a {@code module-info.class} into several jar files, typically dependencies of a project,
+ * where each jar file is processed concurrently with its own module description. Each jar file is written to the
+ * output directory under its original name.
+ */
+@Mojo(name = "inject-modules", defaultPhase = LifecyclePhase.PACKAGE, requiresDependencyResolution = ResolutionScope.RUNTIME, threadSafe = true)
+public class ModuleBatchMojo extends AbstractDescriptorMojo {
+
+    /**
+     * The jar files into which a {@code module-info.class} file is injected, each with its own module description.
+     * When required modules are inferred, the listed jar files are resolved by the names of their descriptions such
+     * that they can require one another.
+     */
+    @Parameter(required = true)
+    private List<ModularizedArtifact> artifacts;
+
+    /**
+     * The directory to which the jar files with a {@code module-info.class} file are written. The directory must not
+     * contain any of the source jar files.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/modules", required = true)
+    private File outputDirectory;
+
+    /**
+     * The number of jar files that are processed concurrently. If not set to a positive number, the number of
+     * available processors is used.
+     */
+    @Parameter(defaultValue = "0")
+    private int threads;
+
+    /**
+     * If set to {@code true}, the build fails if a {@code module-info.class} could not be injected into any of the jar
+     * files. Otherwise, failures are only reported.
+     */
+    @Parameter(defaultValue = "true")
+    private boolean failOnError;
+
+    @Override
+    protected void doExecute() throws MojoExecutionException, MojoFailureException {
+        Map<ModularizedArtifact, SortedMap<Integer, ModuleDefinition>> definitions = new HashMap<ModularizedArtifact, SortedMap<Integer, ModuleDefinition>>();
+        Map<ModularizedArtifact, File> sources = new LinkedHashMap<ModularizedArtifact, File>();
+        Map<File, String> names = new HashMap<File, String>();
+        Set<String> targets = new HashSet<String>();
+        boolean inferRequires = false;
+        for (ModularizedArtifact artifact : artifacts) {
+            if (artifact.name == null) {
+                throw new MojoExecutionException("Module name is not specified for " + artifact);
+            }
+            definitions.put(artifact, artifact.definitions(javaVersion, artifact.releases));
+            File sourceJar = locate(artifact);
+            if (!targets.add(sourceJar.getName())) {
+                throw new MojoExecutionException("Duplicate jar file name in output directory: " + sourceJar.getName());
+            } else if (isSameFile(sourceJar, new File(outputDirectory, sourceJar.getName()))) {
+                throw new MojoExecutionException("Cannot overwrite source jar in output directory: " + sourceJar);
+            }
+            sources.put(artifact, sourceJar);
+            names.put(sourceJar, artifact.name);
+            inferRequires |= artifact.inferRequires;
+        }
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new MojoFailureException("Could not create output directory: " + outputDirectory);
+        }
+        ModuleInjectMojo.JarEntryCreator creator = creator();
+        int threads = this.threads > 0 ? this.threads : Runtime.getRuntime().availableProcessors();
+        long started = System.currentTimeMillis();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        Map<ModularizedArtifact, Exception> failures = new LinkedHashMap<ModularizedArtifact, Exception>();
+        long bytes = 0;
+        try {
+            ModuleResolver resolver = inferRequires ? ModuleResolver.of(project.getArtifacts(), names, true, executorService, getLog()) : null;
+            CompletionService<Long> completionService = new ExecutorCompletionService<Long>(executorService);
+            Map<Future<Long>, ModularizedArtifact> pending = new LinkedHashMap<Future<Long>, ModularizedArtifact>();
+            for (Map.Entry<ModularizedArtifact, File> entry : sources.entrySet()) {
+                pending.put(completionService.submit(new Injection(entry.getKey(), definitions.get(entry.getKey()), entry.getValue(), creator, resolver, metrics)), entry.getKey());
+            }
+            while (!pending.isEmpty()) {
+                Future<Long> future = completionService.take();
+                ModularizedArtifact artifact = pending.remove(future);
+                try {
+                    bytes += future.get();
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    getLog().error("Could not inject module-info.class into " + sources.get(artifact), cause);
+                    failures.put(artifact, cause);
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoFailureException("Could not resolve dependencies of modules", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while injecting module-info.class files", e);
+        } finally {
+            executorService.shutdownNow();
+        }
+        long elapsed = Math.max(System.currentTimeMillis() - started, 1);
+        getLog().info("Injected module-info.class into " + (sources.size() - failures.size()) + " of " + sources.size()
+                + " jar files (" + (bytes / 1024) + " KiB) in " + elapsed + " ms using " + threads + " threads, "
+                + String.format(Locale.ROOT, "%.2f", (bytes / 1024d / 1024d) / (elapsed / 1000d)) + " MiB/s");
+        if (!failures.isEmpty()) {
+            StringBuilder message = new StringBuilder("Could not inject module-info.class into " + failures.size() + " jar files:");
+            for (Map.Entry<ModularizedArtifact, Exception> entry : failures.entrySet()) {
+                message.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue().getMessage());
+            }
+            if (failOnError) {
+                throw new MojoFailureException(message.toString());
+            }
+            getLog().warn(message.toString());
+        }
+    }
+
+    private File locate(ModularizedArtifact artifact) throws MojoExecutionException {
+        File sourceJar = null;
+        if (artifact.artifact != null) {
+            String[] coordinates = artifact.artifact.trim().split(":");
+            if (coordinates.length < 2 || coordinates.length > 3) {
+                throw new MojoExecutionException("Invalid artifact coordinates: " + artifact.artifact);
+            }
+            for (Artifact candidate : project.getArtifacts()) {
+                if (candidate.getGroupId().equals(coordinates[0])
+                        && candidate.getArtifactId().equals(coordinates[1])
+                        && (coordinates.length == 2 ? !candidate.hasClassifier() : coordinates[2].equals(candidate.getClassifier()))) {
+                    sourceJar = candidate.getFile();
+                    break;
+                }
+            }
+            if (sourceJar == null) {
+                throw new MojoExecutionException("Could not locate dependency: " + artifact.artifact);
+            }
+        } else if (artifact.source != null) {
+            sourceJar = new File(artifact.source);
+        } else {
+            throw new MojoExecutionException("Neither artifact nor source is specified for module " + artifact.name);
+        }
+        return sourceJar;
+    }
+
+    private static boolean isSameFile(File left, File right) throws MojoExecutionException {
+        try {
+            return left.getCanonicalFile().equals(right.getCanonicalFile());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not resolve location of " + left, e);
+        }
+    }
+
+    private class Injection implements Callable<Long> {
+
+        private final ModularizedArtifact artifact;
+
+        private final SortedMap<Integer, ModuleDefinition> definitions;
+
+        private final File sourceJar;
+
+        private final ModuleInjectMojo.JarEntryCreator creator;
+
+        private final ModuleResolver resolver;
+
+        private final Metrics metrics;
+
+        private Injection(ModularizedArtifact artifact,
+                          SortedMap<Integer, ModuleDefinition> definitions,
+                          File sourceJar,
+                          ModuleInjectMojo.JarEntryCreator creator,
+                          ModuleResolver resolver,
+                          Metrics metrics) {
+            this.artifact = artifact;
+            this.definitions = definitions;
+            this.sourceJar = sourceJar;
+            this.creator = creator;
+            this.resolver = resolver;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Long call() throws Exception {
+            if (!sourceJar.isFile()) {
+                throw new FileNotFoundException("Could not locate source jar: " + sourceJar);
+            }
+            ModuleInjector injector = new ModuleInjector(definitions,
+                    multirelease,
+                    createMultiReleaseFolderEntry,
+                    creator,
+                    reproducible,
+                    new ModuleInjector.Compression.Original(),
+                    DirectExecutor.INSTANCE,
+                    metrics,
+                    getLog());
+            File targetJar = new File(outputDirectory, sourceJar.getName());
+            JarIndex index = JarIndex.of(sourceJar);
+            try {
+                ModuleContent content = artifact.scan(null, index, DirectExecutor.INSTANCE, resolver, null, getLog());
+                FileOutputStream target = new FileOutputStream(targetJar);
+                try {
+                    injector.copy(index, content, target.getChannel(), sourceJar.toString());
+                } finally {
+                    target.close();
+                }
+            } catch (Exception e) {
+                if (targetJar.exists() && !targetJar.delete()) {
+                    getLog().warn("Could not delete incomplete jar file: " + targetJar);
+                }
+                throw e;
+            } finally {
+                index.close();
+            }
+            getLog().debug("Injected module-info.class for module " + artifact.name + " into " + targetJar);
+            return targetJar.length();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package codes.rafael.modulemaker;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The content of a module as it is discovered from its files.
+ */
+class ModuleContent {
+
+    /**
+     * The packages of the module.
+     */
+    final Set<String> packages = new TreeSet<String>();
+
+    /**
+     * The packages that are referenced by the module's classes, including the module's own packages.
+     */
+    final Set<String> references = new TreeSet<String>();
+
+    /**
+     * The modules that are required to resolve the referenced packages, mapped to {@code true} if a module is
+     * only required statically. Any module is added to the explicitly required modules of a module description.
+     */
+    final Map<String, Boolean> requires = new TreeMap<String, Boolean>();
+
+    /**
+     * The services that are registered in {@code META-INF/services}, mapped to their providers.
+     */
+    final Map<String, List<String>> services = new TreeMap<String, List<String>>();
+
+    /**
+     * The hashes of required modules that are recorded by the {@code ModuleHashes} attribute, by module name.
+     */
+    final Map<String, byte[]> hashes = new TreeMap<String, byte[]>();
+
+    void addService(String service, byte[] registration) {
+        if (service.length() == 0 || service.indexOf('/') != -1) {
+            return;
+        }
+        String content;
+        try {
+            content = new String(registration, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        List<String> providers = new ArrayList<String>();
+        for (String line : content.split("\\r?\\n|\\r")) {
+            int comment = line.indexOf('#');
+            String provider = (comment == -1 ? line : line.substring(0, comment)).trim();
+            if (provider.length() > 0) {
+                providers.add(provider);
+            }
+        }
+        if (!providers.isEmpty()) {
+            services.put(service, providers);
+        }
+    }
+}
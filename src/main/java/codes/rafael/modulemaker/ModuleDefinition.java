@@ -0,0 +1,485 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ModuleHashesAttribute;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+
+/**
+ * A definition of a module from which a {@code module-info.class} is created.
+ */
+public class ModuleDefinition {
+
+    private static final MemoryCache<String, Map<String, byte[]>> MODULE_INFOS = new MemoryCache<String, Map<String, byte[]>>(256);
+
+    /**
+     * The name of the module.
+     */
+    String name;
+
+    /**
+     * The version of the module (optional).
+     */
+    String version;
+
+    /**
+     * A comma-separated list of packages of the module.
+     */
+    String packages;
+
+    /**
+     * If set to {@code true}, the packages of the module are discovered from the module's files.
+     */
+    boolean detectPackages;
+
+    /**
+     * A comma-separated list of required modules.
+     */
+    String requires;
+
+    /**
+     * A comma-separated list of statically required modules.
+     */
+    String staticRequires;
+
+    /**
+     * If set to {@code true}, the required modules are inferred from the types that are referenced by the module's
+     * class files.
+     */
+    boolean inferRequires;
+
+    /**
+     * A comma-separated list of exported packages.
+     */
+    String exports;
+
+    /**
+     * A comma-separated list of opened packages.
+     */
+    String opens;
+
+    /**
+     * A list of qualified exports.
+     */
+    List<QualifiedPackage> qualifiedExports;
+
+    /**
+     * A list of qualified opens.
+     */
+    List<QualifiedPackage> qualifiedOpens;
+
+    /**
+     * The main class of this module (optional).
+     */
+    String mainClass;
+
+    /**
+     * A comma-separated list of used services.
+     */
+    String uses;
+
+    /**
+     * A list of provided services.
+     */
+    List<Provide> provides;
+
+    /**
+     * If set to {@code true}, provided services are discovered from the service registrations in
+     * {@code META-INF/services} of the module.
+     */
+    boolean detectServices;
+
+    /**
+     * Returns this definition for each of the comma-separated Java versions and an overridden definition for each
+     * release, sorted by Java version.
+     */
+    SortedMap<Integer, ModuleDefinition> definitions(String javaVersions, List<Release> releases) throws MojoExecutionException {
+        SortedMap<Integer, ModuleDefinition> definitions = new TreeMap<Integer, ModuleDefinition>();
+        for (String value : javaVersions.split(",")) {
+            int javaVersion;
+            try {
+                javaVersion = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                throw new MojoExecutionException("Invalid Java version for module-info: " + value.trim(), e);
+            }
+            if (javaVersion < 9) {
+                throw new MojoExecutionException("Invalid Java version for module-info: " + javaVersion);
+            } else if (definitions.put(javaVersion, this) != null) {
+                throw new MojoExecutionException("Duplicate Java version: " + javaVersion);
+            }
+        }
+        if (releases != null) {
+            Set<Integer> overridden = new HashSet<Integer>();
+            for (Release release : releases) {
+                if (release.javaVersion < 9) {
+                    throw new MojoExecutionException("Invalid Java version for module-info: " + release.javaVersion);
+                } else if (!overridden.add(release.javaVersion)) {
+                    throw new MojoExecutionException("Duplicate release: " + release.javaVersion);
+                }
+                definitions.put(release.javaVersion, override(release));
+            }
+        }
+        return definitions;
+    }
+
+    ModuleDefinition override(Release release) {
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = name;
+        definition.version = version;
+        definition.packages = release.packages == null ? packages : release.packages;
+        definition.detectPackages = detectPackages;
+        definition.requires = release.requires == null ? requires : release.requires;
+        definition.staticRequires = release.staticRequires == null ? staticRequires : release.staticRequires;
+        definition.inferRequires = inferRequires;
+        definition.exports = release.exports == null ? exports : release.exports;
+        definition.opens = release.opens == null ? opens : release.opens;
+        definition.qualifiedExports = release.qualifiedExports == null ? qualifiedExports : release.qualifiedExports;
+        definition.qualifiedOpens = release.qualifiedOpens == null ? qualifiedOpens : release.qualifiedOpens;
+        definition.mainClass = release.mainClass == null ? mainClass : release.mainClass;
+        definition.uses = release.uses == null ? uses : release.uses;
+        definition.provides = release.provides == null ? provides : release.provides;
+        definition.detectServices = detectServices;
+        return definition;
+    }
+
+    /**
+     * Returns the location of the {@code module-info.class} file of each Java version. Unless a multi-release jar is
+     * created, the file of the lowest Java version is placed in the root and any other file is versioned.
+     */
+    static Map<String, Integer> filenames(SortedMap<Integer, ModuleDefinition> definitions, boolean multirelease) {
+        Map<String, Integer> filenames = new LinkedHashMap<String, Integer>();
+        for (Integer javaVersion : definitions.keySet()) {
+            filenames.put((multirelease || !javaVersion.equals(definitions.firstKey()) ? ("META-INF/versions/" + javaVersion + "/") : "") + "module-info.class", javaVersion);
+        }
+        return filenames;
+    }
+
+    /**
+     * Returns the {@code module-info.class} files by their location. As the files only depend on the configuration and
+     * the module content, they are retained by a hash of both within the current JVM. The returned files must not be
+     * altered.
+     */
+    static Map<String, byte[]> toModuleInfos(SortedMap<Integer, ModuleDefinition> definitions,
+                                             boolean multirelease,
+                                             ModuleContent content,
+                                             Log log) throws MojoExecutionException {
+        String key = toKey(definitions, multirelease, content);
+        Map<String, byte[]> moduleInfos = MODULE_INFOS.get(key);
+        if (moduleInfos == null) {
+            moduleInfos = new LinkedHashMap<String, byte[]>();
+            for (Map.Entry<String, Integer> entry : filenames(definitions, multirelease).entrySet()) {
+                moduleInfos.put(entry.getKey(), definitions.get(entry.getValue()).toModuleInfo(entry.getValue(), content, log));
+            }
+            moduleInfos = Collections.unmodifiableMap(moduleInfos);
+            MODULE_INFOS.put(key, moduleInfos);
+        } else {
+            log.debug("Reusing module-info.class files of " + definitions.get(definitions.firstKey()).name + " from a previous build");
+        }
+        return moduleInfos;
+    }
+
+    private static String toKey(SortedMap<Integer, ModuleDefinition> definitions,
+                                boolean multirelease,
+                                ModuleContent content) {
+        StringBuilder fingerprint = new StringBuilder();
+        append(fingerprint, "multirelease", String.valueOf(multirelease));
+        for (Map.Entry<Integer, ModuleDefinition> entry : definitions.entrySet()) {
+            append(fingerprint, "java-version", String.valueOf(entry.getKey()));
+            entry.getValue().fingerprint(fingerprint);
+        }
+        for (String aPackage : content.packages) {
+            append(fingerprint, "package", aPackage);
+        }
+        for (Map.Entry<String, Boolean> entry : content.requires.entrySet()) {
+            append(fingerprint, entry.getValue() ? "static-require" : "require", entry.getKey());
+        }
+        for (Map.Entry<String, List<String>> entry : content.services.entrySet()) {
+            append(fingerprint, "service", entry.getKey());
+            for (String provider : entry.getValue()) {
+                append(fingerprint, "provider", provider);
+            }
+        }
+        for (Map.Entry<String, byte[]> entry : content.hashes.entrySet()) {
+            append(fingerprint, "hash", entry.getKey());
+            append(fingerprint, "hash", ModuleHasher.toHex(entry.getValue()));
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(fingerprint.toString().getBytes("UTF-8"));
+            return JarCache.toKey(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    void fingerprint(StringBuilder fingerprint) {
+        append(fingerprint, "name", name);
+        append(fingerprint, "version", version);
+        append(fingerprint, "packages", packages);
+        append(fingerprint, "detect-packages", String.valueOf(detectPackages));
+        append(fingerprint, "requires", requires);
+        append(fingerprint, "static-requires", staticRequires);
+        append(fingerprint, "infer-requires", String.valueOf(inferRequires));
+        append(fingerprint, "exports", exports);
+        append(fingerprint, "opens", opens);
+        if (qualifiedExports != null) {
+            for (QualifiedPackage qualifiedPackage : qualifiedExports) {
+                append(fingerprint, "qualified-exports", qualifiedPackage.packages);
+                append(fingerprint, "qualified-exports", qualifiedPackage.modules);
+            }
+        }
+        if (qualifiedOpens != null) {
+            for (QualifiedPackage qualifiedPackage : qualifiedOpens) {
+                append(fingerprint, "qualified-opens", qualifiedPackage.packages);
+                append(fingerprint, "qualified-opens", qualifiedPackage.modules);
+            }
+        }
+        append(fingerprint, "main-class", mainClass);
+        append(fingerprint, "uses", uses);
+        if (provides != null) {
+            for (Provide provide : provides) {
+                append(fingerprint, "provides", provide.services);
+                append(fingerprint, "provides", provide.providers);
+            }
+        }
+        append(fingerprint, "detect-services", String.valueOf(detectServices));
+    }
+
+    static void append(StringBuilder fingerprint, String key, String value) {
+        if (value != null) {
+            fingerprint.append(key).append(':').append(value.length()).append(':').append(value).append(';');
+        }
+    }
+
+    ModuleContent scan(File directory,
+                       JarIndex index,
+                       Executor executor,
+                       ModuleResolver resolver,
+                       File indexFile,
+                       Log log) throws IOException, InterruptedException {
+        if (!detectPackages && !inferRequires && (index != null || !detectServices)) {
+            return new ModuleContent();
+        }
+        ModuleContent content = scan(directory, index, executor, inferRequires, indexFile, log);
+        if (inferRequires) {
+            resolver.resolve(content, log);
+            log.debug("Inferred required modules of " + name + ": " + content.requires.keySet());
+        }
+        return content;
+    }
+
+    /**
+     * Scans the content of a module without resolving any required modules. If references are collected, the class
+     * files that are unchanged compared to the index file are not parsed anew.
+     */
+    ModuleContent scan(File directory,
+                       JarIndex index,
+                       Executor executor,
+                       boolean references,
+                       File indexFile,
+                       Log log) throws IOException, InterruptedException {
+        ModuleIndex previous = new ModuleIndex();
+        if (references && indexFile != null) {
+            try {
+                previous = ModuleIndex.load(indexFile);
+            } catch (IOException e) {
+                log.warn("Could not read module index " + indexFile + ", all class files are parsed", e);
+            }
+        }
+        ModuleScanner scanner = new ModuleScanner(executor, references, detectServices, previous);
+        ModuleContent content = directory == null ? scanner.scan(index) : scanner.scan(directory);
+        if (references && indexFile != null) {
+            try {
+                scanner.index().store(indexFile);
+            } catch (IOException e) {
+                log.warn("Could not write module index " + indexFile, e);
+            }
+        }
+        return content;
+    }
+
+    byte[] toModuleInfo(int javaVersion, ModuleContent content, Log log) throws MojoExecutionException {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(44 + javaVersion, Opcodes.ACC_MODULE, "module-info", null, null, null);
+        ModuleVisitor moduleVisitor = classWriter.visitModule(name, 0, version);
+        if (mainClass != null) {
+            moduleVisitor.visitMainClass(mainClass.trim().replace('.', '/'));
+        }
+        Set<String> previousPackages = detectPackages ? new TreeSet<String>() : new LinkedHashSet<String>();
+        if (packages != null) {
+            for (String aPackage : packages.split(",")) {
+                if (!previousPackages.add(aPackage.trim())) {
+                    throw new MojoExecutionException("Duplicate package: " + aPackage.trim());
+                }
+            }
+        }
+        if (detectPackages) {
+            previousPackages.addAll(content.packages);
+        }
+        for (String aPackage : previousPackages) {
+            moduleVisitor.visitPackage(aPackage.replace('.', '/'));
+        }
+        Set<String> previousRequires = new HashSet<String>();
+        if (requires != null) {
+            for (String module : requires.split(",")) {
+                if (!previousRequires.add(module.trim())) {
+                    throw new MojoExecutionException("Duplicate require: " + module.trim());
+                }
+                moduleVisitor.visitRequire(module.trim(), 0, null);
+            }
+        }
+        if (staticRequires != null) {
+            for (String module : staticRequires.split(",")) {
+                if (!previousRequires.add(module.trim())) {
+                    throw new MojoExecutionException("Duplicate require: " + module.trim());
+                }
+                moduleVisitor.visitRequire(module.trim(), Opcodes.ACC_STATIC_PHASE, null);
+            }
+        }
+        for (Map.Entry<String, Boolean> entry : content.requires.entrySet()) {
+            if (!entry.getKey().equals(name) && previousRequires.add(entry.getKey())) {
+                moduleVisitor.visitRequire(entry.getKey(), entry.getValue() ? Opcodes.ACC_STATIC_PHASE : 0, null);
+            }
+        }
+        if (!previousRequires.contains("java.base")) {
+            moduleVisitor.visitRequire("java.base", Opcodes.ACC_MANDATED, null);
+        }
+        Set<String> previousExports = new HashSet<String>();
+        if (exports != null) {
+            for (String aPackage : exports.split(",")) {
+                if (!previousExports.add(aPackage.trim())) {
+                    throw new MojoExecutionException("Duplicate export: " + aPackage.trim());
+                }
+                moduleVisitor.visitExport(aPackage.trim().replace('.', '/'), 0, (String[]) null);
+            }
+        }
+        if (qualifiedExports != null) {
+            for (QualifiedPackage qualifiedPackage : qualifiedExports) {
+                String[] modules = qualifiedPackage.modules.split(",");
+                Set<String> previousModules = new HashSet<String>();
+                for (int index = 0; index < modules.length; index++) {
+                    if (!previousModules.add(modules[index].trim())) {
+                        throw new MojoExecutionException("Duplicate module: " + modules[index].trim());
+                    }
+                    modules[index] = modules[index].trim();
+                }
+                for (String aPackage : qualifiedPackage.packages.split(",")) {
+                    if (!previousExports.add(aPackage.trim())) {
+                        throw new MojoExecutionException("Duplicate export: " + aPackage.trim());
+                    }
+                    moduleVisitor.visitExport(aPackage.trim().replace('.', '/'), 0, modules);
+                }
+            }
+        }
+        Set<String> previousOpens = new HashSet<String>();
+        if (opens != null) {
+            for (String aPackage : opens.split(",")) {
+                if (!previousOpens.add(aPackage.trim())) {
+                    throw new MojoExecutionException("Duplicate export: " + aPackage.trim());
+                }
+                moduleVisitor.visitOpen(aPackage.trim().replace('.', '/'), 0, (String[]) null);
+            }
+        }
+        if (qualifiedOpens != null) {
+            for (QualifiedPackage qualifiedPackage : qualifiedOpens) {
+                String[] modules = qualifiedPackage.modules.split(",");
+                Set<String> previousModules = new HashSet<String>();
+                for (int index = 0; index < modules.length; index++) {
+                    if (!previousModules.add(modules[index].trim())) {
+                        throw new MojoExecutionException("Duplicate module: " + modules[index].trim());
+                    }
+                    modules[index] = modules[index].trim();
+                }
+                for (String aPackage : qualifiedPackage.packages.split(",")) {
+                    if (!previousOpens.add(aPackage.trim())) {
+                        throw new MojoExecutionException("Duplicate export: " + aPackage.trim());
+                    }
+                    moduleVisitor.visitOpen(aPackage.trim().replace('.', '/'), 0, modules);
+                }
+            }
+        }
+        if (uses != null) {
+            Set<String> previousUses = new HashSet<String>();
+            for (String type : uses.split(",")) {
+                if (!previousUses.add(type.trim())) {
+                    throw new MojoExecutionException("Duplicate use: " + type.trim());
+                }
+                moduleVisitor.visitUse(type.trim().replace('.', '/'));
+            }
+        }
+        Map<String, Set<String>> provided = new LinkedHashMap<String, Set<String>>();
+        if (provides != null) {
+            for (Provide provide : provides) {
+                Set<String> providers = new LinkedHashSet<String>();
+                for (String provider : provide.providers.split(",")) {
+                    if (!providers.add(provider.trim())) {
+                        throw new MojoExecutionException("Duplicate provider: " + provider.trim());
+                    }
+                }
+                for (String type : provide.services.split(",")) {
+                    if (provided.put(type.trim(), providers) != null) {
+                        throw new MojoExecutionException("Duplicate service: " + type.trim());
+                    }
+                }
+            }
+        }
+        if (detectServices) {
+            for (Map.Entry<String, List<String>> entry : content.services.entrySet()) {
+                // Explicit providers can be shared by several services such that they are copied before merging.
+                Set<String> providers = provided.get(entry.getKey());
+                if (providers == null) {
+                    providers = new LinkedHashSet<String>();
+                } else {
+                    log.debug("Merging service registration with explicitly provided service " + entry.getKey());
+                    providers = new LinkedHashSet<String>(providers);
+                }
+                providers.addAll(entry.getValue());
+                provided.put(entry.getKey(), providers);
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : provided.entrySet()) {
+            String[] providers = new String[entry.getValue().size()];
+            int index = 0;
+            for (String provider : entry.getValue()) {
+                providers[index++] = provider.replace('.', '/');
+            }
+            moduleVisitor.visitProvide(entry.getKey().replace('.', '/'), providers);
+        }
+        moduleVisitor.visitEnd();
+        List<String> hashedModules = new ArrayList<String>();
+        List<byte[]> hashes = new ArrayList<byte[]>();
+        for (Map.Entry<String, byte[]> entry : content.hashes.entrySet()) {
+            if (previousRequires.contains(entry.getKey())) {
+                hashedModules.add(entry.getKey());
+                hashes.add(entry.getValue());
+            }
+        }
+        if (!hashedModules.isEmpty()) {
+            classWriter.visitAttribute(new ModuleHashesAttribute(ModuleHasher.ALGORITHM, hashedModules, hashes));
+        }
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -2,41 +2,147 @@ package codes.rafael.modulemaker;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.codehaus.plexus.util.Scanner;
+import org.sonatype.plexus.build.incremental.BuildContext;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A Maven plugin for creating a {@code module-info.class}.
  * A Maven plugin for creating a {@code module-info.class} within the {@code /classes} directory.
+ * During an incremental build within an IDE, the file is only created anew if the plugin's configuration or a file
+ * that is considered for discovering the module's content changed, and only written files are refreshed.
  */
-@Mojo(name = "make-module", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true)
+@Mojo(name = "make-module", defaultPhase = LifecyclePhase.PROCESS_CLASSES, requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
 public class ModuleFileMojo extends AbstractModuleMojo {
 
+    private static final String[] CONTENT = {"**/*.class", ModuleScanner.SERVICES + "**"}, DESCRIPTORS = {"**/" + ModuleVerifier.MODULE_INFO};
+
+    @Component
+    private BuildContext buildContext;
+
     @Parameter(defaultValue = "${project.build.outputDirectory}", required = true, readonly = true)
     private String outputDirectory;
 
     @Override
     protected void doExecute() throws MojoExecutionException, MojoFailureException {
-        File outputDirectory = new File(this.outputDirectory), target = new File(outputDirectory, filename()), parent = target.getParentFile();
-        if (!parent.isDirectory() && !parent.mkdirs()) {
-            throw new MojoExecutionException("Could not read or create module directory: " + parent);
+        File outputDirectory = new File(this.outputDirectory);
+        String key = ModuleFileMojo.class.getName() + ":" + outputDirectory.getAbsolutePath(), fingerprint = null;
+        if (buildContext.isIncremental()) {
+            fingerprint = fingerprint();
+            if (fingerprint.equals(buildContext.getValue(key)) && !hasDelta(outputDirectory,
+                    ModuleDefinition.filenames(definitions(), multirelease).keySet(),
+                    detectPackages || inferRequires || detectServices,
+                    buildContext)) {
+                getLog().debug("Skipping module-info creation as neither the configuration nor the content of " + outputDirectory + " changed");
+                return;
+            }
         }
         try {
+            Map<String, byte[]> moduleInfos = makeModuleInfos(scan(outputDirectory));
+            long started = System.nanoTime();
+            for (File file : write(outputDirectory, moduleInfos, metrics, getLog())) {
+                buildContext.refresh(file);
+            }
+            metrics.time("write", started);
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot write to " + outputDirectory, e);
+        }
+        if (fingerprint != null) {
+            buildContext.setValue(key, fingerprint);
+        }
+    }
+
+    private String fingerprint() throws MojoExecutionException, MojoFailureException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new MojoExecutionException("Could not compute configuration fingerprint", e);
+        }
+        fingerprint(digest);
+        return ModuleHasher.toHex(digest.digest());
+    }
+
+    /**
+     * Determines if a {@code module-info.class} file is missing or, if the module's content is discovered, if any file
+     * changed that is considered for discovering the module's content during an incremental build.
+     */
+    static boolean hasDelta(File outputDirectory, Collection<String> filenames, boolean discovered, BuildContext buildContext) {
+        for (String filename : filenames) {
+            if (!new File(outputDirectory, filename).isFile()) {
+                return true;
+            }
+        }
+        if (!discovered) {
+            return false;
+        }
+        for (Scanner scanner : new Scanner[] {buildContext.newScanner(outputDirectory), buildContext.newDeleteScanner(outputDirectory)}) {
+            scanner.setIncludes(CONTENT);
+            scanner.setExcludes(DESCRIPTORS);
+            scanner.scan();
+            if (scanner.getIncludedFiles().length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes {@code module-info.class} files to an output directory unless a file with identical content exists and
+     * returns the files that were written.
+     */
+    static List<File> write(File outputDirectory, Map<String, byte[]> moduleInfos, Metrics metrics, Log log) throws MojoExecutionException, IOException {
+        List<File> written = new ArrayList<File>();
+        for (Map.Entry<String, byte[]> entry : moduleInfos.entrySet()) {
+            File target = new File(outputDirectory, entry.getKey()), parent = target.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new MojoExecutionException("Could not read or create module directory: " + parent);
+            }
+            byte[] moduleInfo = entry.getValue();
+            if (target.isFile() && target.length() == moduleInfo.length) {
+                byte[] existing = new byte[moduleInfo.length];
+                DataInputStream in = new DataInputStream(new FileInputStream(target));
+                try {
+                    in.readFully(existing);
+                } finally {
+                    in.close();
+                }
+                if (Arrays.equals(moduleInfo, existing)) {
+                    log.info("Skipped writing " + entry.getKey() + " as it is up to date in " + outputDirectory);
+                    metrics.count("descriptors.unchanged", 1);
+                    continue;
+                }
+            }
             OutputStream out = new FileOutputStream(target);
             try {
-                out.write(makeModuleInfo());
+                out.write(moduleInfo);
             } finally {
                 out.close();
             }
-        } catch (IOException e) {
-            throw new MojoFailureException("Cannot write to " + outputDirectory, e);
+            log.info("Added " + entry.getKey() + " to " + outputDirectory);
+            metrics.count("descriptors.written", 1);
+            metrics.count("bytes.written", moduleInfo.length);
+            written.add(target);
         }
-        getLog().info("Added module-info.class to " + outputDirectory);
+        return written;
     }
 }
@@ -0,0 +1,115 @@
+package codes.rafael.modulemaker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the hashes of module jar files as they are recorded by the {@code ModuleHashes} attribute. Jar files are
+ * hashed concurrently where each file is read through memory-mapped regions. Hashes are retained by file identity
+ * within the current JVM such that an unchanged jar file is not hashed again, where a jar file is only considered
+ * unchanged if its trailer still describes the same central directory.
+ */
+class ModuleHasher {
+
+    static final String ALGORITHM = "SHA-256";
+
+    private static final long REGION = 64 * 1024 * 1024;
+
+    private static final MemoryCache<MemoryCache.FileKey, Hash> HASHES = new MemoryCache<MemoryCache.FileKey, Hash>(4096);
+
+    static Map<String, byte[]> hash(Map<String, File> modules, Executor executor) throws IOException, InterruptedException {
+        CompletionService<byte[]> completionService = new ExecutorCompletionService<byte[]>(executor);
+        Map<Future<byte[]>, String> pending = new HashMap<Future<byte[]>, String>();
+        for (final Map.Entry<String, File> entry : modules.entrySet()) {
+            pending.put(completionService.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return hash(entry.getValue());
+                }
+            }), entry.getKey());
+        }
+        Map<String, byte[]> hashes = new TreeMap<String, byte[]>();
+        while (!pending.isEmpty()) {
+            Future<byte[]> future = completionService.take();
+            try {
+                hashes.put(pending.remove(future), future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return hashes;
+    }
+
+    static byte[] hash(File file) throws IOException {
+        MemoryCache.FileKey key = MemoryCache.FileKey.of(file);
+        Hash cached = HASHES.get(key);
+        if (cached != null && cached.trailer.isCurrent(file)) {
+            return cached.value;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        JarIndex.Trailer trailer;
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            try {
+                trailer = JarIndex.Trailer.of(new JarIndex.Source.OfChannel(channel));
+            } catch (IOException ignored) {
+                trailer = null;
+            }
+            long size = channel.size();
+            for (long position = 0; position < size; position += REGION) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION, size - position)));
+            }
+        } finally {
+            channel.close();
+        }
+        byte[] hash = digest.digest();
+        if (trailer != null && key.equals(MemoryCache.FileKey.of(file))) {
+            HASHES.put(key, new Hash(hash, trailer));
+        }
+        return hash;
+    }
+
+    static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (byte value : hash) {
+            hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A hash of a jar file together with the jar file's trailer, which must be unchanged for the hash to be reused.
+     */
+    private static class Hash {
+
+        private final byte[] value;
+
+        private final JarIndex.Trailer trailer;
+
+        private Hash(byte[] value, JarIndex.Trailer trailer) {
+            this.value = value;
+            this.trailer = trailer;
+        }
+    }
+}
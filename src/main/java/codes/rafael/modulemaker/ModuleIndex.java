@@ -0,0 +1,192 @@
+package codes.rafael.modulemaker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the class files of a module that is persisted between builds. For every class file, the index records
+ * its size, a stamp that is either its modification time or its checksum, its package and the packages it references.
+ * A class file is only parsed anew if its size or stamp changed.
+ */
+class ModuleIndex {
+
+    private static final int MAGIC = 0x4D4D4958, VERSION = 1;
+
+    private final Map<String, Record> records;
+
+    ModuleIndex() {
+        records = new ConcurrentHashMap<String, Record>();
+    }
+
+    private ModuleIndex(Map<String, Record> records) {
+        this.records = records;
+    }
+
+    static ModuleIndex load(File file) throws IOException {
+        if (!file.isFile()) {
+            return new ModuleIndex();
+        }
+        ModuleIndex index;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return new ModuleIndex();
+            }
+            index = read(in, file.length());
+        } catch (EOFException ignored) {
+            index = null;
+        } finally {
+            in.close();
+        }
+        // A corrupt or truncated index is discarded such that all class files are parsed anew, as for a version mismatch.
+        if (index == null) {
+            if (!file.delete()) {
+                throw new IOException("Could not delete corrupt module index: " + file);
+            }
+            return new ModuleIndex();
+        }
+        return index;
+    }
+
+    private static ModuleIndex read(DataInputStream in, long length) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > length) {
+            return null;
+        }
+        String[] packages = new String[count];
+        for (int index = 0; index < packages.length; index++) {
+            packages[index] = in.readUTF();
+        }
+        int size = in.readInt();
+        if (size < 0 || size > length) {
+            return null;
+        }
+        Map<String, Record> records = new ConcurrentHashMap<String, Record>(size);
+        for (int index = 0; index < size; index++) {
+            String path = in.readUTF();
+            long recordSize = in.readLong(), stamp = in.readLong();
+            int aPackage = in.readInt();
+            if (aPackage < -1 || aPackage >= packages.length) {
+                return null;
+            }
+            int referenceCount = in.readInt();
+            if (referenceCount < 0 || referenceCount > length) {
+                return null;
+            }
+            String[] references = new String[referenceCount];
+            for (int reference = 0; reference < references.length; reference++) {
+                int target = in.readInt();
+                if (target < 0 || target >= packages.length) {
+                    return null;
+                }
+                references[reference] = packages[target];
+            }
+            records.put(path, new Record(recordSize, stamp, aPackage == -1 ? null : packages[aPackage], references));
+        }
+        return new ModuleIndex(records);
+    }
+
+    void store(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create index directory: " + parent);
+        }
+        Map<String, Integer> indices = new HashMap<String, Integer>();
+        List<String> packages = new ArrayList<String>();
+        for (Record record : records.values()) {
+            if (record.aPackage != null && !indices.containsKey(record.aPackage)) {
+                indices.put(record.aPackage, packages.size());
+                packages.add(record.aPackage);
+            }
+            for (String reference : record.references) {
+                if (!indices.containsKey(reference)) {
+                    indices.put(reference, packages.size());
+                    packages.add(reference);
+                }
+            }
+        }
+        // The index is written to a unique temporary file first such that concurrent builds never read a partial index.
+        File temporary = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            write(temporary, packages, indices);
+            if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+                throw new IOException("Could not replace module index: " + file);
+            }
+        } finally {
+            if (temporary.isFile() && !temporary.delete()) {
+                temporary.deleteOnExit();
+            }
+        }
+    }
+
+    private void write(File file, List<String> packages, Map<String, Integer> indices) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(packages.size());
+            for (String aPackage : packages) {
+                out.writeUTF(aPackage);
+            }
+            out.writeInt(records.size());
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(record.size);
+                out.writeLong(record.stamp);
+                out.writeInt(record.aPackage == null ? -1 : indices.get(record.aPackage));
+                out.writeInt(record.references.length);
+                for (String reference : record.references) {
+                    out.writeInt(indices.get(reference));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    Record get(String path, long size, long stamp) {
+        Record record = records.get(path);
+        return record != null && record.size == size && record.stamp == stamp ? record : null;
+    }
+
+    void put(String path, Record record) {
+        records.put(path, record);
+    }
+
+    Map<String, Record> records() {
+        return Collections.unmodifiableMap(records);
+    }
+
+    /**
+     * A record of a single class file.
+     */
+    static class Record {
+
+        final long size, stamp;
+
+        final String aPackage;
+
+        final String[] references;
+
+        Record(long size, long stamp, String aPackage, String[] references) {
+            this.size = size;
+            this.stamp = stamp;
+            this.aPackage = aPackage;
+            this.references = references;
+        }
+    }
+}
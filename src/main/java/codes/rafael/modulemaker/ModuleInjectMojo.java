@@ -6,19 +6,17 @@ import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.MavenProject;
+import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProjectHelper;
 
 import java.io.*;
 import java.lang.reflect.Method;
-import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
-import java.time.temporal.ChronoUnit;
-import java.time.temporal.TemporalUnit;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.jar.*;
 import java.util.zip.ZipEntry;
@@ -26,11 +24,10 @@ import java.util.zip.ZipEntry;
 /**
  * A Maven plugin for injecting a {@code module-info.class} into an existing jar file.
  */
-@Mojo(name = "inject-module", defaultPhase = LifecyclePhase.PACKAGE)
+@Mojo(name = "inject-module", defaultPhase = LifecyclePhase.PACKAGE, requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
 public class ModuleInjectMojo extends AbstractModuleMojo {
 
-    @Parameter(defaultValue = "${project}", readonly = true, required = true)
-    private MavenProject project;
+    private static final ConcurrentMap<String, JarEntryCreator> CREATORS = new ConcurrentHashMap<String, JarEntryCreator>();
 
     @Component
     private MavenProjectHelper projectHelper;
@@ -49,8 +46,8 @@ public class ModuleInjectMojo extends AbstractModuleMojo {
 
     /**
      * The classifier to add to any additional artifact of this build that contains the {@code module-info.class} file.
-     * If {@code replace} is set to {@code true}, this classifier is used for the name of the intermediate jar file. If
-     * it is empty, the standard classifier {@code modularized} is used.
+     * If {@code replace} is set to {@code true}, this classifier is used as a prefix for the name of an intermediate jar
+     * file that is unique to the execution. If it is empty, the standard classifier {@code modularized} is used.
      */
     @Parameter(defaultValue = "modularized")
     private String classifier;
@@ -62,21 +59,70 @@ public class ModuleInjectMojo extends AbstractModuleMojo {
     private boolean replace;
 
     /**
-     * Determines if a folder entry should be created for a {@code module-info.class} file that is placed in a multi-release
-     * jar if {@code META-INF/versions/[java]/} does not exist.
+     * If set to {@code true} and if {@code replace} is set to {@code true}, the {@code module-info.class} file and any
+     * multi-release folder entries are appended to the source jar in place, without copying any of its entries. This
+     * is only possible if the source jar does not yet contain a {@code module-info.class} at the target location, else
+     * a copy of the jar is written, as it is for {@code reproducible} jar files. The manifest of the source jar is
+     * retained as is. If the build is interrupted while appending, the source jar might be left in a corrupted state.
      */
-    @Parameter(defaultValue = "true")
-    private boolean createMultiReleaseFolderEntry;
+    @Parameter(defaultValue = "false")
+    private boolean append;
 
     /**
-     * Defines an output timestamp for JAR entries.
+     * The path of a jar file within the source jar into which the {@code module-info.class} is injected instead, such
+     * as {@code BOOT-INF/lib/foo.jar!} within a Spring Boot or web archive. The nested jar is rewritten in memory while
+     * the other entries of the source jar are copied as they are. A stored nested jar remains stored such that the
+     * source jar remains launchable.
      */
-    @Parameter(defaultValue = "${project.build.outputTimestamp}")
-    private String outputTimestamp;
+    @Parameter
+    private String nestedJar;
+
+    /**
+     * A directory in which jar files with a {@code module-info.class} are cached. Cache entries are keyed by the
+     * content of the source jar and the effective configuration such that a repeated build can restore a jar file
+     * rather than rewriting it.
+     */
+    @Parameter
+    private String cacheDirectory;
+
+    /**
+     * The maximum size of the cache directory in megabytes. If the cache grows beyond this size, the least recently
+     * used jar files are removed.
+     */
+    @Parameter(defaultValue = "1024")
+    private long cacheSize;
+
+    /**
+     * Determines the compression of the entries of the written jar file. If set to {@code keep-original}, entries are
+     * copied in their original form. If set to {@code store}, entries are stored without compression. If set to
+     * {@code deflate}, entries are deflated with the configured {@code compressionLevel}. Any other compression than
+     * {@code keep-original} requires a copy of the source jar.
+     */
+    @Parameter(defaultValue = "keep-original")
+    private String compression;
+
+    /**
+     * The compression level between {@code 0} and {@code 9} if entries are deflated, or {@code -1} for the default level.
+     */
+    @Parameter(defaultValue = "-1")
+    private int compressionLevel;
+
+    /**
+     * A comma-separated list of patterns of entries to which the compression is applied, such as
+     * <code>**&#47;*.class</code>. If no pattern is specified, the compression is applied to all entries.
+     */
+    @Parameter
+    private String compressionIncludes;
+
+    /**
+     * A comma-separated list of patterns of entries that are copied in their original form, regardless of the
+     * compression.
+     */
+    @Parameter
+    private String compressionExcludes;
 
     @Override
     protected void doExecute() throws MojoExecutionException, MojoFailureException {
-        String filename = filename();
         File sourceJar;
         if (source == null) {
             sourceJar = new File(directory, finalName + ".jar");
@@ -86,105 +132,247 @@ public class ModuleInjectMojo extends AbstractModuleMojo {
         if (!sourceJar.isFile()) {
             throw new MojoExecutionException("Could not locate source jar: " + sourceJar);
         }
-        JarEntryCreator creator;
-        if (outputTimestamp == null) {
-            creator = new JarEntryCreator.Simple();
-        } else {
-            long time;
-            try {
-                time = Long.parseLong(outputTimestamp) / 1000;
-            } catch (RuntimeException e) {
-                if (outputTimestamp.length() < 2) {
-                    time = -1;
-                } else {
-                    try {
-                        Class<?> offsetDateTime = Class.forName("java.time.OffsetDateTime");
-                        Object parsed = offsetDateTime.getMethod("parse", CharSequence.class).invoke(null, outputTimestamp);
-                        Class<?> zoneOffset = Class.forName("java.time.ZoneOffset");
-                        parsed = offsetDateTime.getMethod("withOffsetSameInstant", zoneOffset).invoke(parsed, zoneOffset.getField("UTC").get(null));
-                        Class<?> temporalUnit = Class.forName("java.time.temporal.TemporalUnit");
-                        Class<?> chronoUnit = Class.forName("java.time.temporal.ChronoUnit");
-                        parsed = offsetDateTime.getMethod("truncatedTo", temporalUnit).invoke(parsed, chronoUnit.getField("SECONDS").get(null));
-                        time = (Long) offsetDateTime.getMethod("toEpochSecond").invoke(parsed);
-                    } catch (Exception ignored) {
-                        throw e;
-                    }
-                }
+        JarEntryCreator creator = creator();
+        ExecutorService executorService = isRecompressing()
+                ? Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())
+                : null;
+        try {
+            inject(sourceJar, new ModuleInjector(definitions(),
+                    multirelease,
+                    createMultiReleaseFolderEntry,
+                    creator,
+                    reproducible,
+                    compression(),
+                    executorService == null ? DirectExecutor.INSTANCE : executorService,
+                    metrics,
+                    getLog()));
+        } finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
             }
-            if (time < 0) {
-                creator = new JarEntryCreator.Simple();
+        }
+    }
+
+    private void inject(File sourceJar, ModuleInjector injector) throws MojoExecutionException, MojoFailureException {
+        String classifier = this.classifier == null || this.classifier.isEmpty() ? "modularized" : this.classifier;
+        File targetJar = null;
+        try {
+            File directory = new File(this.directory);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new MojoFailureException("Could not create build directory: " + directory);
+            }
+            targetJar = replace
+                    ? File.createTempFile(finalName + "-" + classifier + "-", ".jar", directory)
+                    : new File(directory, finalName + "-" + classifier + ".jar");
+            JarCache cache;
+            String key;
+            if (cacheDirectory == null) {
+                cache = null;
+                key = null;
             } else {
+                long started = System.nanoTime();
+                cache = new JarCache(new File(cacheDirectory), cacheSize * 1024 * 1024);
+                key = cacheKey(sourceJar);
+                boolean restored = cache.restore(key, targetJar);
+                metrics.time("cache", started);
+                if (restored) {
+                    getLog().info("Restored jar with module-info.class from cache entry " + key);
+                    metrics.count("cache.hits", 1);
+                    complete(sourceJar, targetJar, classifier);
+                    return;
+                }
+                metrics.count("cache.misses", 1);
+            }
+            if (replace && append && isRecompressing()) {
+                getLog().debug("Cannot append to " + sourceJar + " as its entries are compressed anew");
+            } else if (replace && append && reproducible) {
+                getLog().debug("Cannot append to " + sourceJar + " as its entries are normalized");
+            } else if (replace && append && nestedJar != null) {
+                getLog().debug("Cannot append to " + sourceJar + " as a nested jar is rewritten");
+            } else if (replace && append) {
+                long started = System.nanoTime();
+                RandomAccessFile file = new RandomAccessFile(sourceJar, "rw");
                 try {
-                    creator = new JarEntryCreator.WithOutputTimestampAndMore(time);
-                } catch (Exception ignored) {
-                    creator = new JarEntryCreator.WithOutputTimestamp(time);
+                    JarIndex index = JarIndex.of(file.getChannel());
+                    metrics.time("open", started);
+                    if (injector.canAppend(index)) {
+                        metrics.count("bytes.read", file.length());
+                        injector.append(index, scan(index, sourceJar.getName()), file.getChannel());
+                        metrics.count("bytes.written", file.length() - index.centralDirectoryOffset());
+                        getLog().info("Appended module-info.class to " + sourceJar);
+                        if (cache != null) {
+                            started = System.nanoTime();
+                            cache.store(key, sourceJar);
+                            metrics.time("cache", started);
+                        }
+                        return;
+                    }
+                    getLog().debug("Cannot append to " + sourceJar + " as it already contains one of " + injector.filenames());
+                } finally {
+                    file.close();
                 }
             }
-        }
-        String classifier = this.classifier == null || this.classifier.isEmpty() ? "modularized" : this.classifier;
-        try {
-            File targetJar = new File(directory, finalName + "-" + classifier + ".jar");
             if (!targetJar.isFile() && !targetJar.createNewFile()) {
                 throw new MojoExecutionException("Target jar could not be created and did not exist from before: " + targetJar);
             }
-            JarInputStream inputStream = new JarInputStream(new FileInputStream(sourceJar));
+            long started = System.nanoTime();
+            JarIndex index = JarIndex.of(sourceJar);
+            metrics.time("open", started);
             try {
-                if (!targetJar.isFile() && !targetJar.createNewFile()) {
-                    throw new MojoFailureException("Could not create target jar: " + targetJar);
-                }
-                Manifest manifest = inputStream.getManifest();
-                JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(targetJar));
+                FileOutputStream target = new FileOutputStream(targetJar);
                 try {
-                    if (manifest != null) {
-                        outputStream.putNextEntry(creator.toEntry(JarFile.MANIFEST_NAME));
-                        manifest.write(outputStream);
-                        outputStream.closeEntry();
-                    }
-                    Set<String> multiReleaseDirectories = multirelease && createMultiReleaseFolderEntry
-                            ? new HashSet<String>(Arrays.asList("META-INF/", "META-INF/versions/", "META-INF/versions/" + javaVersion + "/"))
-                            : Collections.<String>emptySet();
-                    JarEntry jarEntry;
-                    while ((jarEntry = inputStream.getNextJarEntry()) != null) {
-                        if (jarEntry.getName().equals(filename)) {
-                            inputStream.closeEntry();
-                            getLog().warn("Ignoring preexisting module-info.class in " + sourceJar);
-                            continue;
-                        } else if (multiReleaseDirectories.remove(jarEntry.getName())) {
-                            getLog().debug("Discovered multi-version jar file location: " + jarEntry.getName());
-                        }
-                        outputStream.putNextEntry(jarEntry);
-                        byte[] buffer = new byte[1024];
-                        int index;
-                        while ((index = inputStream.read(buffer)) != -1) {
-                            outputStream.write(buffer, 0, index);
+                    metrics.count("bytes.read", sourceJar.length());
+                    int compressed;
+                    long copyStarted;
+                    if (nestedJar == null) {
+                        ModuleContent content = scan(index, sourceJar.getName());
+                        copyStarted = System.currentTimeMillis();
+                        compressed = injector.copy(index, content, target.getChannel(), sourceJar.toString());
+                    } else {
+                        String name = nestedJar.endsWith("!") ? nestedJar.substring(0, nestedJar.length() - 1) : nestedJar;
+                        JarIndex.Entry nested = index.get(name);
+                        if (nested == null || nested.isDirectory()) {
+                            throw new MojoExecutionException("Could not locate nested jar " + name + " in " + sourceJar);
                         }
-                        inputStream.closeEntry();
-                        outputStream.closeEntry();
+                        JarIndex nestedIndex = JarIndex.of(index.read(nested));
+                        ModuleContent content = scan(nestedIndex, name.substring(name.lastIndexOf('/') + 1));
+                        copyStarted = System.currentTimeMillis();
+                        compressed = injector.copy(index, nested, nestedIndex, content, target.getChannel(), sourceJar.toString());
                     }
-                    outputStream.putNextEntry(creator.toEntry(filename));
-                    outputStream.write(makeModuleInfo());
-                    outputStream.closeEntry();
-                    for (String directory : multiReleaseDirectories) {
-                        outputStream.putNextEntry(creator.toEntry(directory));
-                        outputStream.closeEntry();
+                    metrics.count("bytes.written", target.getChannel().size());
+                    if (isRecompressing()) {
+                        getLog().info("Compressed " + compressed + " entries with " + compression + ", resulting in "
+                                + target.getChannel().size() + " bytes from " + sourceJar.length() + " bytes in "
+                                + (System.currentTimeMillis() - copyStarted) + " ms");
                     }
                 } finally {
-                    outputStream.close();
+                    target.close();
                 }
             } finally {
-                inputStream.close();
+                index.close();
             }
-            if (replace) {
-                if (!sourceJar.delete() || !targetJar.renameTo(sourceJar)) {
-                    throw new MojoFailureException("Could not replace source jar: " + sourceJar);
-                }
-                getLog().info("Injected module-info.class into " + sourceJar);
-            } else {
-                projectHelper.attachArtifact(project, project.getArtifact().getType(), classifier, targetJar);
-                getLog().info("Attached artifact with module-info.class as " + targetJar);
+            if (cache != null) {
+                started = System.nanoTime();
+                cache.store(key, targetJar);
+                metrics.time("cache", started);
             }
+            complete(sourceJar, targetJar, classifier);
         } catch (IOException exception) {
             throw new MojoFailureException("Could not write or read artifact", exception);
+        } finally {
+            if (replace && targetJar != null && targetJar.isFile() && !targetJar.delete()) {
+                targetJar.deleteOnExit();
+            }
+        }
+    }
+
+    private void complete(File sourceJar, File targetJar, String classifier) throws MojoFailureException {
+        long started = System.nanoTime();
+        if (replace) {
+            if (!sourceJar.delete() || !targetJar.renameTo(sourceJar)) {
+                throw new MojoFailureException("Could not replace source jar: " + sourceJar);
+            }
+            metrics.time("replace", started);
+            getLog().info("Injected module-info.class into " + sourceJar);
+        } else {
+            projectHelper.attachArtifact(project, project.getArtifact().getType(), classifier, targetJar);
+            metrics.time("attach", started);
+            getLog().info("Attached artifact with module-info.class as " + targetJar);
+        }
+    }
+
+    private String cacheKey(File sourceJar) throws MojoExecutionException, MojoFailureException, IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new MojoExecutionException("Could not compute cache key", e);
+        }
+        // The plugin version is included such that a jar that was modularized by a previous release is not restored.
+        digest.update(("format:" + JarCache.FORMAT + ";plugin:" + pluginVersion() + ";").getBytes("UTF-8"));
+        JarCache.update(digest, sourceJar);
+        fingerprint(digest);
+        digest.update(("outputTimestamp:" + outputTimestamp
+                + ";createMultiReleaseFolderEntry:" + createMultiReleaseFolderEntry
+                + ";append:" + (replace && append)
+                + ";reproducible:" + reproducible
+                + ";compression:" + compression
+                + ";compressionLevel:" + compressionLevel
+                + ";compressionIncludes:" + compressionIncludes
+                + ";compressionExcludes:" + compressionExcludes
+                + ";nestedJar:" + nestedJar).getBytes("UTF-8"));
+        return JarCache.toKey(digest);
+    }
+
+    private boolean isRecompressing() {
+        return compression != null && !compression.equals("keep-original");
+    }
+
+    private ModuleInjector.Compression compression() throws MojoExecutionException {
+        int level;
+        if (compression == null || compression.equals("keep-original")) {
+            return new ModuleInjector.Compression.Original();
+        } else if (compression.equals("store")) {
+            level = EntryPipeline.STORED;
+        } else if (compression.equals("deflate")) {
+            if (compressionLevel < -1 || compressionLevel > 9) {
+                throw new MojoExecutionException("Invalid compression level: " + compressionLevel);
+            }
+            level = compressionLevel;
+        } else {
+            throw new MojoExecutionException("Unknown compression: " + compression);
+        }
+        return new ModuleInjector.Compression.Filtered(level, PathPattern.of(compressionIncludes), PathPattern.of(compressionExcludes));
+    }
+
+    /**
+     * Returns an entry creator for the output timestamp. As creators are immutable, they are shared by all executions
+     * such that the timestamp is parsed and the reflective lookups are resolved only once per timestamp.
+     */
+    static JarEntryCreator creator(String outputTimestamp) {
+        if (outputTimestamp == null) {
+            return new JarEntryCreator.Simple();
+        }
+        JarEntryCreator creator = CREATORS.get(outputTimestamp);
+        if (creator == null) {
+            creator = toCreator(outputTimestamp);
+            JarEntryCreator previous = CREATORS.putIfAbsent(outputTimestamp, creator);
+            if (previous != null) {
+                creator = previous;
+            }
+        }
+        return creator;
+    }
+
+    private static JarEntryCreator toCreator(String outputTimestamp) {
+        long time;
+        try {
+            time = Long.parseLong(outputTimestamp) / 1000;
+        } catch (RuntimeException e) {
+            if (outputTimestamp.length() < 2) {
+                time = -1;
+            } else {
+                try {
+                    Class<?> offsetDateTime = Class.forName("java.time.OffsetDateTime");
+                    Object parsed = offsetDateTime.getMethod("parse", CharSequence.class).invoke(null, outputTimestamp);
+                    Class<?> zoneOffset = Class.forName("java.time.ZoneOffset");
+                    parsed = offsetDateTime.getMethod("withOffsetSameInstant", zoneOffset).invoke(parsed, zoneOffset.getField("UTC").get(null));
+                    Class<?> temporalUnit = Class.forName("java.time.temporal.TemporalUnit");
+                    Class<?> chronoUnit = Class.forName("java.time.temporal.ChronoUnit");
+                    parsed = offsetDateTime.getMethod("truncatedTo", temporalUnit).invoke(parsed, chronoUnit.getField("SECONDS").get(null));
+                    time = (Long) offsetDateTime.getMethod("toEpochSecond").invoke(parsed);
+                } catch (Exception ignored) {
+                    throw e;
+                }
+            }
+        }
+        if (time < 0) {
+            return new JarEntryCreator.Simple();
+        }
+        try {
+            return new JarEntryCreator.WithOutputTimestampAndMore(time);
+        } catch (Exception ignored) {
+            return new JarEntryCreator.WithOutputTimestamp(time);
         }
     }
 
@@ -192,19 +380,33 @@ public class ModuleInjectMojo extends AbstractModuleMojo {
 
         JarEntry toEntry(String name);
 
+        /**
+         * Returns the metadata of a created entry that is applied to all written entries in reproducible mode, or
+         * {@code null} if no output timestamp is defined. The metadata is computed once per creator.
+         */
+        JarWriter.Metadata metadata();
+
         class Simple implements JarEntryCreator {
             @Override
             public JarEntry toEntry(String name) {
                 return new JarEntry(name);
             }
+
+            @Override
+            public JarWriter.Metadata metadata() {
+                return null;
+            }
         }
 
         class WithOutputTimestamp implements JarEntryCreator {
 
             private final long time;
 
+            private final JarWriter.Metadata metadata;
+
             public WithOutputTimestamp(long time) {
                 this.time = time;
+                metadata = JarWriter.Metadata.of(toEntry(JarFile.MANIFEST_NAME));
             }
 
             @Override
@@ -213,21 +415,31 @@ public class ModuleInjectMojo extends AbstractModuleMojo {
                 entry.setTime(time / 1000);
                 return entry;
             }
+
+            @Override
+            public JarWriter.Metadata metadata() {
+                return metadata;
+            }
         }
 
         class WithOutputTimestampAndMore implements JarEntryCreator {
 
             private final long time;
 
-            private final Method fromMillis, setCreationTime, setLastAccessTime, setLastModifiedTime;
+            private final Object fileTime;
+
+            private final Method setCreationTime, setLastAccessTime, setLastModifiedTime;
+
+            private final JarWriter.Metadata metadata;
 
             public WithOutputTimestampAndMore(long time) throws Exception {
                 this.time = time;
                 Class<?> fileTime = Class.forName("java.nio.file.attribute.FileTime");
-                fromMillis = fileTime.getMethod("from", long.class, TimeUnit.class);
+                this.fileTime = fileTime.getMethod("from", long.class, TimeUnit.class).invoke(null, time, TimeUnit.SECONDS);
                 setCreationTime = ZipEntry.class.getMethod("setCreationTime", fileTime);
                 setLastAccessTime = ZipEntry.class.getMethod("setLastAccessTime", fileTime);
                 setLastModifiedTime = ZipEntry.class.getMethod("setLastModifiedTime", fileTime);
+                metadata = JarWriter.Metadata.of(toEntry(JarFile.MANIFEST_NAME));
             }
 
             @Override
@@ -235,7 +447,6 @@ public class ModuleInjectMojo extends AbstractModuleMojo {
                 JarEntry entry = new JarEntry(name);
                 entry.setTime(time);
                 try {
-                    Object fileTime = fromMillis.invoke(null, time, TimeUnit.SECONDS);
                     setCreationTime.invoke(entry, fileTime);
                     setLastAccessTime.invoke(entry, fileTime);
                     setLastModifiedTime.invoke(entry, fileTime);
@@ -244,6 +455,11 @@ public class ModuleInjectMojo extends AbstractModuleMojo {
                 }
                 return entry;
             }
+
+            @Override
+            public JarWriter.Metadata metadata() {
+                return metadata;
+            }
         }
     }
 }
@@ -0,0 +1,350 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Executor;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the {@code module-info.class} files of one or several Java versions into a jar file, either by copying the
+ * jar's entries to a new jar file or by appending the created entries to the jar file in place. Existing entries are
+ * copied without being recompressed unless a compression is configured. The jar file can also be nested within
+ * another jar file whose remaining entries are copied as they are. In reproducible mode, all entries are written with
+ * the metadata of the entry creator and in the order of their names, following the manifest.
+ */
+class ModuleInjector {
+
+    private final SortedMap<Integer, ModuleDefinition> definitions;
+
+    private final boolean multirelease, createMultiReleaseFolderEntry;
+
+    private static final int WINDOW = 1024;
+
+    private static final long CAPACITY = 64 * 1024 * 1024;
+
+    private final ModuleInjectMojo.JarEntryCreator creator;
+
+    private final JarWriter.Metadata metadata;
+
+    private final Compression compression;
+
+    private final Executor executor;
+
+    private final Metrics metrics;
+
+    private final Log log;
+
+    /**
+     * Orders entries by their names where the manifest and its folder are expected to be written up front.
+     */
+    private static final Comparator<JarIndex.Entry> BY_NAME = new Comparator<JarIndex.Entry>() {
+        @Override
+        public int compare(JarIndex.Entry left, JarIndex.Entry right) {
+            int order = rank(left.name) - rank(right.name);
+            return order == 0 ? left.name.compareTo(right.name) : order;
+        }
+
+        private int rank(String name) {
+            if (name.equals("META-INF/")) {
+                return 0;
+            }
+            return name.equalsIgnoreCase(JarFile.MANIFEST_NAME) ? 1 : 2;
+        }
+    };
+
+    ModuleInjector(SortedMap<Integer, ModuleDefinition> definitions,
+                   boolean multirelease,
+                   boolean createMultiReleaseFolderEntry,
+                   ModuleInjectMojo.JarEntryCreator creator,
+                   boolean reproducible,
+                   Compression compression,
+                   Executor executor,
+                   Metrics metrics,
+                   Log log) {
+        this.definitions = definitions;
+        this.multirelease = multirelease;
+        this.createMultiReleaseFolderEntry = createMultiReleaseFolderEntry;
+        this.creator = creator;
+        metadata = reproducible ? creator.metadata() : null;
+        if (reproducible && metadata == null) {
+            throw new IllegalArgumentException("Reproducible mode requires an output timestamp");
+        }
+        this.compression = compression;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.log = log;
+    }
+
+    Set<String> filenames() {
+        return ModuleDefinition.filenames(definitions, multirelease).keySet();
+    }
+
+    boolean canAppend(JarIndex index) {
+        if (metadata != null) {
+            return false;
+        }
+        for (String filename : filenames()) {
+            if (index.get(filename) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void append(JarIndex index, ModuleContent content, FileChannel channel) throws MojoExecutionException, IOException {
+        long started = System.nanoTime();
+        for (JarIndex.Entry entry : index.entries()) {
+            collectService(index, entry, content);
+        }
+        metrics.time("copy", started);
+        JarIndex created = createEntries(content, multiReleaseDirectories(index));
+        started = System.nanoTime();
+        channel.truncate(index.centralDirectoryOffset());
+        channel.position(index.centralDirectoryOffset());
+        JarWriter writer = new JarWriter(channel);
+        for (JarIndex.Entry entry : index.entries()) {
+            writer.retain(entry);
+        }
+        for (JarIndex.Entry entry : created.entries()) {
+            writer.copy(created, entry);
+        }
+        writer.finish();
+        metrics.time("write", started);
+        metrics.count("entries.retained", index.entries().size());
+    }
+
+    /**
+     * Copies the entries of the index to the channel and returns the number of entries that were compressed anew.
+     */
+    int copy(JarIndex index, ModuleContent content, WritableByteChannel channel, String origin) throws MojoExecutionException, IOException {
+        long started = System.nanoTime();
+        Set<String> filenames = filenames();
+        JarIndex.Entry manifest = index.getIgnoreCase(JarFile.MANIFEST_NAME);
+        JarWriter writer = new JarWriter(channel, metadata);
+        EntryPipeline pipeline = new EntryPipeline(writer, executor, WINDOW, CAPACITY);
+        try {
+            JarIndex.Entry metaInf = index.get("META-INF/");
+            if (metaInf != null) {
+                pipeline.copy(index, metaInf);
+            }
+            if (manifest != null) {
+                JarIndex created = createManifest(new Manifest(new ByteArrayInputStream(index.read(manifest))));
+                JarIndex.Entry entry = created.get(JarFile.MANIFEST_NAME);
+                pipeline.add(created, entry, compression.level(entry));
+            }
+            List<JarIndex.Entry> entries = new ArrayList<JarIndex.Entry>(metadata == null ? 0 : index.entries().size());
+            for (JarIndex.Entry entry : index.entries()) {
+                if (filenames.contains(entry.name)) {
+                    log.warn("Ignoring preexisting " + entry.name + " in " + origin);
+                } else if (entry != manifest && entry != metaInf) {
+                    collectService(index, entry, content);
+                    if (metadata == null) {
+                        pipeline.add(index, entry, compression.level(entry));
+                    } else {
+                        entries.add(entry);
+                    }
+                }
+            }
+            metrics.time("copy", started);
+            JarIndex created = createEntries(content, multiReleaseDirectories(index));
+            started = System.nanoTime();
+            if (metadata == null) {
+                for (JarIndex.Entry entry : created.entries()) {
+                    pipeline.add(created, entry, compression.level(entry));
+                }
+            } else {
+                List<JarIndex.Entry> createdEntries = new ArrayList<JarIndex.Entry>(created.entries());
+                Collections.sort(entries, BY_NAME);
+                Collections.sort(createdEntries, BY_NAME);
+                int position = 0;
+                for (JarIndex.Entry entry : entries) {
+                    while (position < createdEntries.size() && BY_NAME.compare(createdEntries.get(position), entry) < 0) {
+                        JarIndex.Entry createdEntry = createdEntries.get(position++);
+                        pipeline.add(created, createdEntry, compression.level(createdEntry));
+                    }
+                    pipeline.add(index, entry, compression.level(entry));
+                }
+                for (JarIndex.Entry createdEntry : createdEntries.subList(position, createdEntries.size())) {
+                    pipeline.add(created, createdEntry, compression.level(createdEntry));
+                }
+            }
+            pipeline.finish();
+        } finally {
+            pipeline.cancel();
+        }
+        writer.finish();
+        metrics.time("write", started);
+        metrics.count("entries.copied", pipeline.copied());
+        metrics.count("entries.recompressed", pipeline.compressed());
+        return pipeline.compressed();
+    }
+
+    /**
+     * Copies the entries of the index to the channel where a nested jar is replaced by a copy that contains the
+     * {@code module-info.class} files. The nested jar is written in memory and retains its compression method such
+     * that a stored jar remains stored. Returns the number of entries of the nested jar that were compressed anew.
+     */
+    int copy(JarIndex index,
+             JarIndex.Entry nested,
+             JarIndex nestedIndex,
+             ModuleContent content,
+             FileChannel channel,
+             String origin) throws MojoExecutionException, IOException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream((int) Math.min(nested.size + 4096, Integer.MAX_VALUE - 8));
+        int compressed = copy(nestedIndex, content, Channels.newChannel(jar), origin + "!/" + nested.name);
+        long started = System.nanoTime();
+        byte[] bytes = jar.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        byte[] data;
+        if (nested.method == ZipEntry.STORED) {
+            data = bytes;
+        } else {
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(bytes.length);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                DeflaterOutputStream outputStream = new DeflaterOutputStream(deflated, deflater);
+                outputStream.write(bytes);
+                outputStream.finish();
+            } finally {
+                deflater.end();
+            }
+            data = deflated.toByteArray();
+        }
+        JarWriter writer = new JarWriter(channel, metadata);
+        List<JarIndex.Entry> entries = index.entries();
+        if (metadata != null) {
+            entries = new ArrayList<JarIndex.Entry>(entries);
+            Collections.sort(entries, BY_NAME);
+        }
+        for (JarIndex.Entry entry : entries) {
+            if (entry == nested) {
+                writer.write(index, entry, nested.method, (int) crc.getValue(), bytes.length, data, data.length);
+            } else {
+                writer.copy(index, entry);
+            }
+        }
+        writer.finish();
+        metrics.time("nest", started);
+        metrics.count("entries.copied", index.entries().size() - 1);
+        return compressed;
+    }
+
+    private Set<String> multiReleaseDirectories(JarIndex index) {
+        Set<String> multiReleaseDirectories = new LinkedHashSet<String>();
+        if (createMultiReleaseFolderEntry) {
+            for (String filename : filenames()) {
+                if (filename.startsWith("META-INF/versions/")) {
+                    multiReleaseDirectories.add("META-INF/");
+                    multiReleaseDirectories.add("META-INF/versions/");
+                    multiReleaseDirectories.add(filename.substring(0, filename.lastIndexOf('/') + 1));
+                }
+            }
+        }
+        for (JarIndex.Entry entry : index.entries()) {
+            if (multiReleaseDirectories.remove(entry.name)) {
+                log.debug("Discovered multi-version jar file location: " + entry.name);
+            }
+        }
+        return multiReleaseDirectories;
+    }
+
+    private void collectService(JarIndex index, JarIndex.Entry entry, ModuleContent content) throws IOException {
+        if (definitions.get(definitions.firstKey()).detectServices && !entry.isDirectory() && entry.name.startsWith(ModuleScanner.SERVICES)) {
+            content.addService(entry.name.substring(ModuleScanner.SERVICES.length()), index.read(entry));
+        }
+    }
+
+    private JarIndex createManifest(Manifest manifest) throws IOException {
+        ByteArrayOutputStream created = new ByteArrayOutputStream();
+        JarOutputStream outputStream = new JarOutputStream(created);
+        try {
+            outputStream.putNextEntry(creator.toEntry(JarFile.MANIFEST_NAME));
+            manifest.write(outputStream);
+            outputStream.closeEntry();
+        } finally {
+            outputStream.close();
+        }
+        return JarIndex.of(created.toByteArray());
+    }
+
+    private JarIndex createEntries(ModuleContent content, Set<String> multiReleaseDirectories) throws MojoExecutionException, IOException {
+        long started = System.nanoTime();
+        ByteArrayOutputStream created = new ByteArrayOutputStream();
+        ZipOutputStream outputStream = new ZipOutputStream(created);
+        try {
+            for (Map.Entry<String, byte[]> entry : ModuleDefinition.toModuleInfos(definitions, multirelease, content, log).entrySet()) {
+                outputStream.putNextEntry(creator.toEntry(entry.getKey()));
+                outputStream.write(entry.getValue());
+                outputStream.closeEntry();
+            }
+            for (String directory : multiReleaseDirectories) {
+                outputStream.putNextEntry(creator.toEntry(directory));
+                outputStream.closeEntry();
+            }
+        } finally {
+            outputStream.close();
+        }
+        metrics.time("descriptor", started);
+        metrics.count("directories.created", multiReleaseDirectories.size());
+        return JarIndex.of(created.toByteArray());
+    }
+
+    /**
+     * Determines the compression level of an entry that is copied from the source jar, as defined by
+     * {@link EntryPipeline}.
+     */
+    interface Compression {
+
+        int level(JarIndex.Entry entry);
+
+        class Original implements Compression {
+            @Override
+            public int level(JarIndex.Entry entry) {
+                return EntryPipeline.ORIGINAL;
+            }
+        }
+
+        class Filtered implements Compression {
+
+            private final int level;
+
+            private final PathPattern includes, excludes;
+
+            public Filtered(int level, PathPattern includes, PathPattern excludes) {
+                this.level = level;
+                this.includes = includes;
+                this.excludes = excludes;
+            }
+
+            @Override
+            public int level(JarIndex.Entry entry) {
+                return (includes.isEmpty() || includes.matches(entry.name)) && !excludes.matches(entry.name)
+                        ? level
+                        : EntryPipeline.ORIGINAL;
+            }
+        }
+    }
+}
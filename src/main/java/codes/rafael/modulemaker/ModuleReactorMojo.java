@@ -0,0 +1,322 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Maven plugin for creating the {@code module-info.class} files of several projects of a reactor within a single
+ * execution. The output directories of all projects are scanned concurrently to build an index of the packages of
+ * every module, from which the required modules of the reactor are derived for each module. All
+ * {@code module-info.class} files are then written concurrently. As an aggregator, the goal must execute after all
+ * described projects are compiled, for example by invoking {@code mvn compile modulemaker:make-modules} or by binding
+ * it within a project that depends on all described projects. The build fails if the derived requires form a cycle.
+ */
+@Mojo(name = "make-modules", aggregator = true, defaultPhase = LifecyclePhase.PROCESS_CLASSES, requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
+public class ModuleReactorMojo extends AbstractMeasuredMojo {
+
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true, required = true)
+    private List<MavenProject> reactorProjects;
+
+    /**
+     * The projects of the reactor for which a {@code module-info.class} file is created, each with its own module
+     * description. A module requires any other described module of which it references a package. A required module
+     * is required statically if the project's dependency on the module's project is optional or in the
+     * {@code provided} scope.
+     */
+    @Parameter(required = true)
+    private List<ReactorModule> modules;
+
+    /**
+     * The number of projects that are processed concurrently. If not set to a positive number, the number of
+     * available processors is used.
+     */
+    @Parameter(defaultValue = "0")
+    private int threads;
+
+    /**
+     * The Java version in which the {@code module-info.class} files should be compiled. If a comma-separated list of
+     * versions is specified, a {@code module-info.class} file is created for each version.
+     */
+    @Parameter(name = "java-version", defaultValue = "9")
+    private String javaVersion;
+
+    /**
+     * A directory in which an index of the class files of each module is retained between builds, in a file that is
+     * named after the module. Only class files that changed since an index was written are parsed anew.
+     */
+    @Parameter(name = "index-directory", defaultValue = "${project.build.directory}/modulemaker")
+    private String indexDirectory;
+
+    /**
+     * Determines if the {@code module-info.class} files are added as class files of multi-release jar files.
+     */
+    @Parameter(required = true, defaultValue = "false")
+    private boolean multirelease;
+
+    @Override
+    protected void doExecute() throws MojoExecutionException, MojoFailureException {
+        final Map<ReactorModule, MavenProject> projects = new LinkedHashMap<ReactorModule, MavenProject>();
+        final Map<ReactorModule, SortedMap<Integer, ModuleDefinition>> definitions = new HashMap<ReactorModule, SortedMap<Integer, ModuleDefinition>>();
+        Set<String> names = new HashSet<String>();
+        for (ReactorModule module : modules) {
+            if (module.name == null) {
+                throw new MojoExecutionException("Module name is not specified for " + module);
+            } else if (!names.add(module.name)) {
+                throw new MojoExecutionException("Duplicate module name: " + module.name);
+            }
+            MavenProject project = locate(module);
+            if (projects.containsValue(project)) {
+                throw new MojoExecutionException("Duplicate module description for project: " + project.getId());
+            } else if (!new File(project.getBuild().getOutputDirectory()).isDirectory()) {
+                throw new MojoExecutionException("Output directory of " + project.getId() + " does not exist, the project must be compiled first");
+            }
+            projects.put(module, project);
+            definitions.put(module, module.definitions(javaVersion, module.releases));
+        }
+        int threads = this.threads > 0 ? this.threads : Runtime.getRuntime().availableProcessors();
+        long started = System.nanoTime();
+        ExecutorService modulePool = Executors.newFixedThreadPool(threads);
+        final ExecutorService classPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        int reactorRequires;
+        try {
+            Map<ReactorModule, Future<ModuleContent>> scans = new LinkedHashMap<ReactorModule, Future<ModuleContent>>();
+            for (final Map.Entry<ReactorModule, MavenProject> entry : projects.entrySet()) {
+                scans.put(entry.getKey(), modulePool.submit(new Callable<ModuleContent>() {
+                    @Override
+                    public ModuleContent call() throws Exception {
+                        long started = System.nanoTime();
+                        try {
+                            return entry.getKey().scan(new File(entry.getValue().getBuild().getOutputDirectory()),
+                                    null,
+                                    classPool,
+                                    true,
+                                    indexDirectory == null ? null : new File(indexDirectory, entry.getKey().name + ".index"),
+                                    getLog());
+                        } finally {
+                            metrics.time("scan", started);
+                        }
+                    }
+                }));
+            }
+            final Map<ReactorModule, ModuleContent> contents = new LinkedHashMap<ReactorModule, ModuleContent>();
+            for (Map.Entry<ReactorModule, Future<ModuleContent>> entry : scans.entrySet()) {
+                contents.put(entry.getKey(), await(entry.getValue()));
+            }
+            reactorRequires = requires(contents, projects, modulePool, getLog());
+            List<Future<Void>> writes = new ArrayList<Future<Void>>();
+            for (final Map.Entry<ReactorModule, ModuleContent> entry : contents.entrySet()) {
+                writes.add(modulePool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        ReactorModule module = entry.getKey();
+                        MavenProject project = projects.get(module);
+                        ModuleContent content = entry.getValue();
+                        if (module.inferRequires) {
+                            ModuleResolver.of(project.getArtifacts(), classPool, getLog()).resolve(content, getLog());
+                        }
+                        getLog().debug("Required modules of " + module.name + ": " + content.requires.keySet());
+                        long started = System.nanoTime();
+                        Map<String, byte[]> moduleInfos = ModuleDefinition.toModuleInfos(definitions.get(module), multirelease, content, getLog());
+                        metrics.time("descriptor", started);
+                        started = System.nanoTime();
+                        ModuleFileMojo.write(new File(project.getBuild().getOutputDirectory()), moduleInfos, metrics, getLog());
+                        metrics.time("write", started);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> write : writes) {
+                await(write);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted while creating module-info.class files", e);
+        } finally {
+            modulePool.shutdownNow();
+            classPool.shutdownNow();
+        }
+        getLog().info("Created module-info.class files for " + projects.size() + " projects with " + reactorRequires
+                + " requires within the reactor in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms using "
+                + threads + " threads");
+    }
+
+    /**
+     * Derives the requires within the reactor of every module from an index of the packages of all modules where the
+     * modules are processed concurrently. References to packages of the reactor are removed from each module's content
+     * such that they are not resolved again from the module's dependencies. Returns the number of derived requires.
+     */
+    static int requires(Map<ReactorModule, ModuleContent> contents,
+                        final Map<ReactorModule, MavenProject> projects,
+                        ExecutorService executorService,
+                        Log log) throws MojoExecutionException, MojoFailureException, InterruptedException {
+        final Map<String, ReactorModule> packages = new HashMap<String, ReactorModule>();
+        for (Map.Entry<ReactorModule, ModuleContent> entry : contents.entrySet()) {
+            for (String aPackage : entry.getValue().packages) {
+                ReactorModule previous = packages.get(aPackage);
+                if (previous == null) {
+                    packages.put(aPackage, entry.getKey());
+                } else {
+                    log.debug("Package " + aPackage + " is split between " + previous.name + " and " + entry.getKey().name);
+                }
+            }
+        }
+        final AtomicInteger reactorRequires = new AtomicInteger();
+        List<Future<Void>> derivations = new ArrayList<Future<Void>>();
+        for (final Map.Entry<ReactorModule, ModuleContent> entry : contents.entrySet()) {
+            derivations.add(executorService.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    ReactorModule module = entry.getKey();
+                    MavenProject project = projects.get(module);
+                    ModuleContent content = entry.getValue();
+                    Iterator<String> references = content.references.iterator();
+                    while (references.hasNext()) {
+                        String reference = references.next();
+                        ReactorModule required = packages.get(reference);
+                        if (required == null || content.packages.contains(reference)) {
+                            continue;
+                        }
+                        references.remove();
+                        if (required != module) {
+                            boolean isStatic = isStatic(project, projects.get(required));
+                            Boolean previous = content.requires.put(required.name, isStatic);
+                            if (previous == null) {
+                                reactorRequires.incrementAndGet();
+                            } else {
+                                content.requires.put(required.name, previous && isStatic);
+                            }
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> derivation : derivations) {
+            await(derivation);
+        }
+        List<String> cycle = cycle(contents);
+        if (cycle != null) {
+            StringBuilder message = new StringBuilder("Cyclic requires within the reactor: ");
+            for (String name : cycle) {
+                message.append(name).append(" -> ");
+            }
+            throw new MojoExecutionException(message.append(cycle.get(0)).toString());
+        }
+        return reactorRequires.get();
+    }
+
+    /**
+     * Returns the names of the modules that form a cycle of requires within the reactor, or {@code null} if the
+     * modules do not require each other cyclically, which the module system rejects.
+     */
+    static List<String> cycle(Map<ReactorModule, ModuleContent> contents) {
+        Map<String, Set<String>> requires = new LinkedHashMap<String, Set<String>>();
+        for (Map.Entry<ReactorModule, ModuleContent> entry : contents.entrySet()) {
+            requires.put(entry.getKey().name, entry.getValue().requires.keySet());
+        }
+        Set<String> completed = new HashSet<String>();
+        for (String name : requires.keySet()) {
+            List<String> cycle = cycle(name, requires, new ArrayList<String>(), completed);
+            if (cycle != null) {
+                return cycle;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> cycle(String name, Map<String, Set<String>> requires, List<String> path, Set<String> completed) {
+        int index = path.indexOf(name);
+        if (index != -1) {
+            return new ArrayList<String>(path.subList(index, path.size()));
+        } else if (completed.contains(name) || !requires.containsKey(name)) {
+            return null;
+        }
+        path.add(name);
+        for (String required : requires.get(name)) {
+            List<String> cycle = cycle(required, requires, path, completed);
+            if (cycle != null) {
+                return cycle;
+            }
+        }
+        path.remove(path.size() - 1);
+        completed.add(name);
+        return null;
+    }
+
+    private MavenProject locate(ReactorModule module) throws MojoExecutionException {
+        if (module.project == null) {
+            throw new MojoExecutionException("Project is not specified for module " + module.name);
+        }
+        String[] coordinates = module.project.trim().split(":");
+        if (coordinates.length > 2) {
+            throw new MojoExecutionException("Invalid project coordinates: " + module.project);
+        }
+        MavenProject located = null;
+        for (MavenProject project : reactorProjects) {
+            if (coordinates.length == 1
+                    ? project.getArtifactId().equals(coordinates[0])
+                    : project.getGroupId().equals(coordinates[0]) && project.getArtifactId().equals(coordinates[1])) {
+                if (located != null) {
+                    throw new MojoExecutionException("Ambiguous project coordinates: " + module.project);
+                }
+                located = project;
+            }
+        }
+        if (located == null) {
+            throw new MojoExecutionException("Could not locate project in reactor: " + module.project);
+        }
+        return located;
+    }
+
+    /**
+     * Determines if a module is required statically from the requiring project's own dependency declarations, as the
+     * artifacts of a reactor project are not necessarily resolved when the descriptors are derived.
+     */
+    private static boolean isStatic(MavenProject project, MavenProject required) {
+        for (Dependency dependency : project.getDependencies()) {
+            if (dependency.getGroupId().equals(required.getGroupId()) && dependency.getArtifactId().equals(required.getArtifactId())) {
+                return dependency.isOptional() || Artifact.SCOPE_PROVIDED.equals(dependency.getScope());
+            }
+        }
+        return false;
+    }
+
+    private static <T> T await(Future<T> future) throws MojoExecutionException, MojoFailureException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MojoExecutionException) {
+                throw (MojoExecutionException) e.getCause();
+            } else if (e.getCause() instanceof MojoFailureException) {
+                throw (MojoFailureException) e.getCause();
+            }
+            throw new MojoFailureException("Could not create module-info.class files: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.Log;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the module that contains a package, either from the modules of the Java runtime or from the dependencies
+ * of a project. Dependencies without an explicit module name are treated as automatic modules.
+ */
+class ModuleResolver {
+
+    private static final String MODULE_INFO = "module-info.class", AUTOMATIC_MODULE_NAME = "Automatic-Module-Name";
+
+    private static final Pattern VERSION = Pattern.compile("-(\\d+(\\.|$))"), NON_ALPHANUMERIC = Pattern.compile("[^A-Za-z0-9]+");
+
+    private static final MemoryCache<MemoryCache.FileKey, JarContent> JAR_CONTENTS = new MemoryCache<MemoryCache.FileKey, JarContent>(1024);
+
+    private static volatile Map<String, String> systemPackages;
+
+    private final Map<String, Dependency> dependencies = new HashMap<String, Dependency>();
+
+    private final Map<String, Dependency> modules = new HashMap<String, Dependency>();
+
+    private ModuleResolver() {
+        /* empty */
+    }
+
+    static ModuleResolver of(Collection<Artifact> artifacts, Executor executor, Log log) throws IOException, InterruptedException {
+        return of(artifacts, Collections.<File, String>emptyMap(), false, executor, log);
+    }
+
+    /**
+     * Creates a resolver where the given jar files are resolved as modules of the given names, whether or not they are
+     * dependencies of the project. Packages of these jar files take precedence over packages of any other dependency.
+     * If {@code runtime} is {@code true}, dependencies in the {@code runtime} scope are considered in addition to
+     * those of the compile class path.
+     */
+    static ModuleResolver of(Collection<Artifact> artifacts,
+                             Map<File, String> names,
+                             boolean runtime,
+                             Executor executor,
+                             Log log) throws IOException, InterruptedException {
+        ModuleResolver resolver = new ModuleResolver();
+        Map<File, String> unresolved = new LinkedHashMap<File, String>();
+        for (Map.Entry<File, String> entry : names.entrySet()) {
+            unresolved.put(entry.getKey().getAbsoluteFile(), entry.getValue());
+        }
+        CompletionService<Dependency> completionService = new ExecutorCompletionService<Dependency>(executor);
+        List<Dependency> directories = new ArrayList<Dependency>();
+        int pending = 0;
+        for (Artifact artifact : artifacts) {
+            if (artifact.getFile() == null || !(Artifact.SCOPE_COMPILE.equals(artifact.getScope())
+                    || Artifact.SCOPE_PROVIDED.equals(artifact.getScope())
+                    || Artifact.SCOPE_SYSTEM.equals(artifact.getScope())
+                    || runtime && Artifact.SCOPE_RUNTIME.equals(artifact.getScope()))) {
+                continue;
+            }
+            boolean isStatic = artifact.isOptional() || Artifact.SCOPE_PROVIDED.equals(artifact.getScope());
+            if (artifact.getFile().isDirectory()) {
+                directories.add(ofDirectory(artifact.getFile(), artifact.getArtifactId(), isStatic, executor));
+            } else if (artifact.getFile().isFile()) {
+                completionService.submit(new JarDependency(artifact.getFile(), unresolved.remove(artifact.getFile().getAbsoluteFile()), isStatic));
+                pending++;
+            }
+        }
+        for (Map.Entry<File, String> entry : unresolved.entrySet()) {
+            completionService.submit(new JarDependency(entry.getKey(), entry.getValue(), false));
+            pending++;
+        }
+        List<Dependency> jars = new ArrayList<Dependency>(pending);
+        while (pending-- > 0) {
+            try {
+                jars.add(completionService.take().get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        for (Dependency dependency : jars) {
+            if (dependency.named) {
+                resolver.add(dependency, log);
+            }
+        }
+        for (Dependency dependency : directories) {
+            resolver.add(dependency, log);
+        }
+        for (Dependency dependency : jars) {
+            if (!dependency.named) {
+                resolver.add(dependency, log);
+            }
+        }
+        return resolver;
+    }
+
+    private void add(Dependency dependency, Log log) {
+        if (!modules.containsKey(dependency.name)) {
+            modules.put(dependency.name, dependency);
+        }
+        for (String aPackage : dependency.packages) {
+            Dependency previous = dependencies.get(aPackage);
+            if (previous == null) {
+                dependencies.put(aPackage, dependency);
+            } else {
+                log.debug("Package " + aPackage + " is split between " + previous.name + " and " + dependency.name);
+            }
+        }
+    }
+
+    /**
+     * Returns the jar file or directory of the dependency that defines a module, or {@code null} if no dependency
+     * defines the module.
+     */
+    File locate(String module) {
+        Dependency dependency = modules.get(module);
+        return dependency == null ? null : dependency.file;
+    }
+
+    void resolve(ModuleContent content, Log log) {
+        Map<String, String> systemPackages = systemPackages();
+        if (systemPackages.isEmpty()) {
+            log.warn("Cannot resolve modules of the Java platform on a Java runtime without module support");
+        }
+        for (String reference : content.references) {
+            if (content.packages.contains(reference)) {
+                continue;
+            }
+            String module = systemPackages.get(reference);
+            boolean isStatic = false;
+            if (module == null) {
+                Dependency dependency = dependencies.get(reference);
+                if (dependency == null) {
+                    log.debug("Could not resolve module of referenced package " + reference);
+                    continue;
+                }
+                module = dependency.name;
+                isStatic = dependency.isStatic;
+            }
+            if (!module.equals("java.base")) {
+                Boolean previous = content.requires.get(module);
+                content.requires.put(module, previous == null ? isStatic : previous && isStatic);
+            }
+        }
+    }
+
+    static String toModuleName(byte[] moduleInfo) {
+        final String[] name = new String[1];
+        new ClassReader(moduleInfo).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public ModuleVisitor visitModule(String module, int access, String version) {
+                name[0] = module;
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return name[0];
+    }
+
+    static String toAutomaticModuleName(String name) {
+        if (name.endsWith(".jar")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        Matcher matcher = VERSION.matcher(name);
+        if (matcher.find()) {
+            name = name.substring(0, matcher.start());
+        }
+        name = NON_ALPHANUMERIC.matcher(name).replaceAll(".");
+        int start = 0, end = name.length();
+        while (start < end && name.charAt(start) == '.') {
+            start++;
+        }
+        while (end > start && name.charAt(end - 1) == '.') {
+            end--;
+        }
+        return name.substring(start, end);
+    }
+
+    static String toModuleName(JarIndex index) throws IOException {
+        JarIndex.Entry moduleInfo = index.get(MODULE_INFO);
+        if (moduleInfo == null) {
+            for (JarIndex.Entry entry : index.entries()) {
+                if (entry.name.startsWith("META-INF/versions/") && entry.name.endsWith("/" + MODULE_INFO)) {
+                    moduleInfo = entry;
+                    break;
+                }
+            }
+        }
+        if (moduleInfo != null) {
+            return toModuleName(index.read(moduleInfo));
+        }
+        JarIndex.Entry manifest = index.getIgnoreCase(JarFile.MANIFEST_NAME);
+        if (manifest != null) {
+            String name = new Manifest(new ByteArrayInputStream(index.read(manifest))).getMainAttributes().getValue(AUTOMATIC_MODULE_NAME);
+            if (name != null) {
+                return name.trim();
+            }
+        }
+        return null;
+    }
+
+    private static Dependency ofDirectory(File directory, String artifactId, boolean isStatic, Executor executor) throws IOException, InterruptedException {
+        String name = null;
+        File moduleInfo = new File(directory, MODULE_INFO), manifest = new File(directory, JarFile.MANIFEST_NAME);
+        if (moduleInfo.isFile()) {
+            byte[] classFile = new byte[(int) moduleInfo.length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(moduleInfo));
+            try {
+                in.readFully(classFile);
+            } finally {
+                in.close();
+            }
+            name = toModuleName(classFile);
+        } else if (manifest.isFile()) {
+            InputStream in = new FileInputStream(manifest);
+            try {
+                name = new Manifest(in).getMainAttributes().getValue(AUTOMATIC_MODULE_NAME);
+            } finally {
+                in.close();
+            }
+        }
+        return new Dependency(name == null ? toAutomaticModuleName(artifactId) : name.trim(),
+                new ModuleScanner(executor, false).scan(directory).packages,
+                isStatic,
+                directory);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> systemPackages() {
+        Map<String, String> systemPackages = ModuleResolver.systemPackages;
+        if (systemPackages == null) {
+            systemPackages = new HashMap<String, String>();
+            try {
+                Class<?> moduleFinder = Class.forName("java.lang.module.ModuleFinder");
+                Class<?> moduleReference = Class.forName("java.lang.module.ModuleReference");
+                Class<?> moduleDescriptor = Class.forName("java.lang.module.ModuleDescriptor");
+                Method descriptor = moduleReference.getMethod("descriptor"),
+                        name = moduleDescriptor.getMethod("name"),
+                        packages = moduleDescriptor.getMethod("packages");
+                Object finder = moduleFinder.getMethod("ofSystem").invoke(null);
+                for (Object reference : (Set<Object>) moduleFinder.getMethod("findAll").invoke(finder)) {
+                    Object module = descriptor.invoke(reference);
+                    for (String aPackage : (Set<String>) packages.invoke(module)) {
+                        systemPackages.put(aPackage, (String) name.invoke(module));
+                    }
+                }
+            } catch (Exception ignored) {
+                systemPackages = Collections.emptyMap();
+            }
+            ModuleResolver.systemPackages = systemPackages;
+        }
+        return systemPackages;
+    }
+
+    private static class Dependency {
+
+        private final String name;
+
+        private final Set<String> packages;
+
+        private final boolean isStatic;
+
+        private final File file;
+
+        private final boolean named;
+
+        private Dependency(String name, Set<String> packages, boolean isStatic, File file) {
+            this(name, packages, isStatic, file, false);
+        }
+
+        private Dependency(String name, Set<String> packages, boolean isStatic, File file, boolean named) {
+            this.name = name;
+            this.packages = packages;
+            this.isStatic = isStatic;
+            this.file = file;
+            this.named = named;
+        }
+    }
+
+    /**
+     * The module name and packages of a jar file together with the jar file's trailer, which must be unchanged for
+     * the content to be reused.
+     */
+    private static class JarContent {
+
+        private final String name;
+
+        private final Set<String> packages;
+
+        private final JarIndex.Trailer trailer;
+
+        private JarContent(String name, Set<String> packages, JarIndex.Trailer trailer) {
+            this.name = name;
+            this.packages = packages;
+            this.trailer = trailer;
+        }
+    }
+
+    private static class JarDependency implements Callable<Dependency> {
+
+        private final File file;
+
+        private final String name;
+
+        private final boolean isStatic;
+
+        private JarDependency(File file, String name, boolean isStatic) {
+            this.file = file;
+            this.name = name;
+            this.isStatic = isStatic;
+        }
+
+        @Override
+        public Dependency call() throws IOException {
+            MemoryCache.FileKey key = MemoryCache.FileKey.of(file);
+            JarContent cached = JAR_CONTENTS.get(key);
+            if (cached == null || !cached.trailer.isCurrent(file)) {
+                JarIndex index = JarIndex.of(file);
+                try {
+                    String name = toModuleName(index);
+                    Set<String> packages = new TreeSet<String>();
+                    for (JarIndex.Entry entry : index.entries()) {
+                        if (!entry.isDirectory()) {
+                            String aPackage = ModuleScanner.toPackage(entry.name);
+                            if (aPackage != null) {
+                                packages.add(aPackage);
+                            }
+                        }
+                    }
+                    cached = new JarContent(name == null ? toAutomaticModuleName(file.getName()) : name,
+                            Collections.unmodifiableSet(packages),
+                            index.trailer());
+                    if (key.equals(MemoryCache.FileKey.of(file))) {
+                        JAR_CONTENTS.put(key, cached);
+                    }
+                } finally {
+                    index.close();
+                }
+            }
+            return new Dependency(name == null ? cached.name : name, cached.packages, isStatic, file, name != null);
+        }
+    }
+}
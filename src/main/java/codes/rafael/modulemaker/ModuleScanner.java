@@ -0,0 +1,263 @@
+package codes.rafael.modulemaker;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
+
+/**
+ * Discovers the content of a module from the files it contains. A file is considered to be contained in a package
+ * if its folder names are valid Java identifiers and if it is not located within {@code META-INF}, with the
+ * exception of versioned files of a multi-release jar. If references are collected, all class files are parsed
+ * concurrently unless a class file is unchanged compared to its record in a previous index.
+ */
+class ModuleScanner {
+
+    static final String SERVICES = "META-INF/services/", VERSIONS = "META-INF/versions/";
+
+    private static final String CLASS_FILE = ".class", MODULE_INFO = "module-info.class";
+
+    private static final int BATCH_SIZE = 256;
+
+    private final Executor executor;
+
+    private final boolean references, services;
+
+    private final ModuleIndex previous, next = new ModuleIndex();
+
+    ModuleScanner(Executor executor, boolean references) {
+        this(executor, references, false, new ModuleIndex());
+    }
+
+    ModuleScanner(Executor executor, boolean references, boolean services, ModuleIndex previous) {
+        this.executor = executor;
+        this.references = references;
+        this.services = services;
+        this.previous = previous;
+    }
+
+    ModuleIndex index() {
+        return next;
+    }
+
+    static String toPackage(String path) {
+        if (path.startsWith(VERSIONS)) {
+            int index = path.indexOf('/', VERSIONS.length());
+            if (index == -1) {
+                return null;
+            }
+            path = path.substring(index + 1);
+        }
+        int index = path.lastIndexOf('/');
+        if (index < 1 || path.startsWith("META-INF/")) {
+            return null;
+        }
+        StringBuilder aPackage = new StringBuilder(index);
+        boolean start = true;
+        for (int position = 0; position < index; position++) {
+            char character = path.charAt(position);
+            if (character == '/') {
+                if (start) {
+                    return null;
+                }
+                aPackage.append('.');
+                start = true;
+            } else if (start ? Character.isJavaIdentifierStart(character) : Character.isJavaIdentifierPart(character)) {
+                aPackage.append(character);
+                start = false;
+            } else {
+                return null;
+            }
+        }
+        return start ? null : aPackage.toString();
+    }
+
+    private static boolean isClassFile(String name) {
+        return name.endsWith(CLASS_FILE) && !name.endsWith(MODULE_INFO);
+    }
+
+    ModuleContent scan(JarIndex index) throws IOException, InterruptedException {
+        ModuleContent content = new ModuleContent();
+        List<JarIndex.Entry> classFiles = new ArrayList<JarIndex.Entry>();
+        for (JarIndex.Entry entry : index.entries()) {
+            if (!entry.isDirectory()) {
+                String aPackage = toPackage(entry.name);
+                if (aPackage != null) {
+                    content.packages.add(aPackage);
+                }
+                if (references && isClassFile(entry.name)) {
+                    classFiles.add(entry);
+                }
+            }
+        }
+        if (!classFiles.isEmpty()) {
+            CompletionService<Set<String>> completionService = new ExecutorCompletionService<Set<String>>(executor);
+            int pending = 0;
+            for (int start = 0; start < classFiles.size(); start += BATCH_SIZE) {
+                completionService.submit(new EntryBatch(index, classFiles.subList(start, Math.min(start + BATCH_SIZE, classFiles.size()))));
+                pending++;
+            }
+            while (pending-- > 0) {
+                content.references.addAll(take(completionService));
+            }
+        }
+        return content;
+    }
+
+    ModuleContent scan(File directory) throws IOException, InterruptedException {
+        ModuleContent content = new ModuleContent();
+        CompletionService<Listing> completionService = new ExecutorCompletionService<Listing>(executor);
+        completionService.submit(new Listing(directory, ""));
+        int pending = 1;
+        while (pending-- > 0) {
+            Listing listing = take(completionService);
+            if (listing.files) {
+                String aPackage = toPackage(listing.path);
+                if (aPackage != null) {
+                    content.packages.add(aPackage);
+                }
+            }
+            content.references.addAll(listing.references);
+            for (Map.Entry<String, byte[]> entry : listing.registrations.entrySet()) {
+                content.addService(entry.getKey(), entry.getValue());
+            }
+            for (Listing child : listing.children) {
+                completionService.submit(child);
+                pending++;
+            }
+        }
+        return content;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(content);
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+
+    private static <T> T take(CompletionService<T> completionService) throws IOException, InterruptedException {
+        try {
+            return completionService.take().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not scan module content", e.getCause());
+        }
+    }
+
+    private class Listing implements Callable<Listing> {
+
+        private final File directory;
+
+        private final String path;
+
+        private final List<Listing> children = new ArrayList<Listing>();
+
+        private final Set<String> references = new HashSet<String>();
+
+        private final Map<String, byte[]> registrations = new HashMap<String, byte[]>();
+
+        private boolean files;
+
+        private Listing(File directory, String path) {
+            this.directory = directory;
+            this.path = path;
+        }
+
+        @Override
+        public Listing call() throws IOException {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                throw new IOException("Could not list directory: " + directory);
+            }
+            Collector collector = null;
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    children.add(new Listing(file, path + file.getName() + "/"));
+                } else {
+                    this.files = true;
+                    if (services && path.equals(SERVICES)) {
+                        registrations.put(file.getName(), read(file));
+                    }
+                    if (ModuleScanner.this.references && isClassFile(file.getName())) {
+                        String name = path + file.getName();
+                        long size = file.length(), stamp = file.lastModified();
+                        ModuleIndex.Record record = previous.get(name, size, stamp);
+                        if (record == null) {
+                            if (collector == null) {
+                                collector = new Collector();
+                            }
+                            record = collector.collect(name, size, stamp, read(file));
+                        }
+                        Collections.addAll(references, record.references);
+                        next.put(name, record);
+                    }
+                }
+            }
+            return this;
+        }
+    }
+
+    private class EntryBatch implements Callable<Set<String>> {
+
+        private final JarIndex index;
+
+        private final List<JarIndex.Entry> entries;
+
+        private EntryBatch(JarIndex index, List<JarIndex.Entry> entries) {
+            this.index = index;
+            this.entries = entries;
+        }
+
+        @Override
+        public Set<String> call() throws IOException {
+            Set<String> references = new HashSet<String>();
+            Collector collector = new Collector();
+            for (JarIndex.Entry entry : entries) {
+                ModuleIndex.Record record = previous.get(entry.name, entry.size, entry.crc);
+                if (record == null) {
+                    record = collector.collect(entry.name, entry.size, entry.crc, index.read(entry));
+                }
+                Collections.addAll(references, record.references);
+                next.put(entry.name, record);
+            }
+            return references;
+        }
+    }
+
+    private static class Collector {
+
+        private final ReferenceCollector collector = new ReferenceCollector();
+
+        private final Set<String> references = new HashSet<String>();
+
+        private ModuleIndex.Record collect(String name, long size, long stamp, byte[] classFile) throws IOException {
+            try {
+                collector.collect(classFile, references);
+                return new ModuleIndex.Record(size, stamp, toPackage(name), references.toArray(new String[references.size()]));
+            } catch (RuntimeException e) {
+                throw new IOException("Could not parse class file " + name + ": " + e.getMessage(), e);
+            } finally {
+                references.clear();
+            }
+        }
+    }
+}
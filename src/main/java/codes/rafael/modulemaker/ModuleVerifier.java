@@ -0,0 +1,171 @@
+package codes.rafael.modulemaker;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Verifies {@code module-info.class} files against the classes and packages of a module as they are listed by the
+ * central directory of a jar file or by the files of a directory. The versioned files of a multi-release jar are
+ * considered for the {@code module-info.class} files of their own and of any later Java version.
+ */
+class ModuleVerifier {
+
+    static final String MODULE_INFO = "module-info.class";
+
+    private static final int ROOT = 0;
+
+    private final SortedMap<Integer, Set<String>> classes = new TreeMap<Integer, Set<String>>();
+
+    private final SortedMap<Integer, Set<String>> packages = new TreeMap<Integer, Set<String>>();
+
+    /**
+     * Returns the Java version of a path where {@code 0} denotes the root of a jar file, or {@code -1} if the path
+     * is placed in a folder of a multi-release jar that does not name a Java version.
+     */
+    static int toVersion(String path) {
+        if (!path.startsWith(ModuleScanner.VERSIONS)) {
+            return ROOT;
+        }
+        int index = path.indexOf('/', ModuleScanner.VERSIONS.length());
+        if (index == -1) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(path.substring(ModuleScanner.VERSIONS.length(), index));
+        } catch (NumberFormatException ignored) {
+            return -1;
+        }
+    }
+
+    static String toRelativePath(String path) {
+        return path.startsWith(ModuleScanner.VERSIONS) ? path.substring(path.indexOf('/', ModuleScanner.VERSIONS.length()) + 1) : path;
+    }
+
+    void add(String path) {
+        int version = toVersion(path);
+        if (version == -1 || path.endsWith("/")) {
+            return;
+        }
+        String relativePath = toRelativePath(path);
+        String aPackage = ModuleScanner.toPackage(relativePath);
+        if (aPackage == null) {
+            return;
+        }
+        view(packages, version).add(aPackage);
+        if (relativePath.endsWith(".class")) {
+            view(classes, version).add(relativePath.substring(0, relativePath.length() - ".class".length()).replace('/', '.'));
+        }
+    }
+
+    int classes() {
+        return merge(classes, Integer.MAX_VALUE).size();
+    }
+
+    int packages() {
+        return merge(packages, Integer.MAX_VALUE).size();
+    }
+
+    /**
+     * Returns a description of every declaration of the {@code module-info.class} file of the given Java version that
+     * does not match the module's content.
+     */
+    List<String> verify(int version, byte[] moduleInfo) {
+        final Set<String> declaredPackages = new TreeSet<String>(), exports = new TreeSet<String>(), opens = new TreeSet<String>();
+        final Map<String, String> providers = new TreeMap<String, String>();
+        final String[] mainClass = new String[1];
+        new ClassReader(moduleInfo).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public ModuleVisitor visitModule(String name, int access, String version) {
+                return new ModuleVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitMainClass(String name) {
+                        mainClass[0] = name.replace('/', '.');
+                    }
+
+                    @Override
+                    public void visitPackage(String name) {
+                        declaredPackages.add(name.replace('/', '.'));
+                    }
+
+                    @Override
+                    public void visitExport(String name, int access, String... modules) {
+                        exports.add(name.replace('/', '.'));
+                    }
+
+                    @Override
+                    public void visitOpen(String name, int access, String... modules) {
+                        opens.add(name.replace('/', '.'));
+                    }
+
+                    @Override
+                    public void visitProvide(String service, String... implementations) {
+                        for (String implementation : implementations) {
+                            providers.put(implementation.replace('/', '.'), service.replace('/', '.'));
+                        }
+                    }
+                };
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        Set<String> classes = merge(this.classes, version), packages = merge(this.packages, version);
+        List<String> problems = new ArrayList<String>();
+        for (String aPackage : exports) {
+            if (!packages.contains(aPackage)) {
+                problems.add("Exported package " + aPackage + " does not exist");
+            }
+        }
+        for (String aPackage : opens) {
+            if (!packages.contains(aPackage)) {
+                problems.add("Opened package " + aPackage + " does not exist");
+            }
+        }
+        if (!declaredPackages.isEmpty()) {
+            for (String aPackage : declaredPackages) {
+                if (!packages.contains(aPackage)) {
+                    problems.add("Listed package " + aPackage + " does not exist");
+                }
+            }
+            for (String aPackage : packages) {
+                if (!declaredPackages.contains(aPackage)) {
+                    problems.add("Package " + aPackage + " is not listed by the module's packages");
+                }
+            }
+        }
+        for (Map.Entry<String, String> entry : providers.entrySet()) {
+            if (!classes.contains(entry.getKey())) {
+                problems.add("Provider " + entry.getKey() + " of service " + entry.getValue() + " does not exist");
+            }
+        }
+        if (mainClass[0] != null && !classes.contains(mainClass[0])) {
+            problems.add("Main class " + mainClass[0] + " does not exist");
+        }
+        return problems;
+    }
+
+    private static Set<String> view(SortedMap<Integer, Set<String>> values, int version) {
+        Set<String> view = values.get(version);
+        if (view == null) {
+            view = new HashSet<String>();
+            values.put(version, view);
+        }
+        return view;
+    }
+
+    private static Set<String> merge(SortedMap<Integer, Set<String>> values, int version) {
+        Set<String> merged = new TreeSet<String>();
+        for (Set<String> view : (version == Integer.MAX_VALUE ? values : values.headMap(version + 1)).values()) {
+            merged.addAll(view);
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,144 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A Maven plugin for verifying the {@code module-info.class} files of an artifact against its content. Exported and
+ * opened packages, listed packages, service providers and the main class of every {@code module-info.class} file must
+ * exist within the artifact. The artifact is indexed from the central directory of its jar file or from the files of
+ * its output directory, without reading any class file other than the {@code module-info.class} files.
+ */
+@Mojo(name = "verify-module", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
+public class ModuleVerifyMojo extends AbstractMeasuredMojo {
+
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true, readonly = true)
+    private File outputDirectory;
+
+    /**
+     * The jar file or directory to verify. If not set, the project's artifact is verified if it was packaged, or
+     * the project's output directory otherwise.
+     */
+    @Parameter
+    private String source;
+
+    /**
+     * If set to {@code true}, the build fails if a {@code module-info.class} file does not match the artifact's
+     * content or if the artifact does not contain any. Otherwise, any mismatch is only logged as a warning.
+     */
+    @Parameter(defaultValue = "true")
+    private boolean failOnError;
+
+    @Override
+    protected void doExecute() throws MojoExecutionException, MojoFailureException {
+        File artifact;
+        if (source != null) {
+            artifact = new File(source);
+        } else if (project.getArtifact().getFile() != null && project.getArtifact().getFile().isFile()) {
+            artifact = project.getArtifact().getFile();
+        } else {
+            artifact = outputDirectory;
+        }
+        long started = System.nanoTime();
+        ModuleVerifier verifier = new ModuleVerifier();
+        SortedMap<Integer, byte[]> moduleInfos = new TreeMap<Integer, byte[]>();
+        try {
+            if (artifact.isFile()) {
+                JarIndex index = JarIndex.of(artifact);
+                try {
+                    for (JarIndex.Entry entry : index.entries()) {
+                        if (isModuleInfo(entry.name)) {
+                            moduleInfos.put(ModuleVerifier.toVersion(entry.name), index.read(entry));
+                        } else {
+                            verifier.add(entry.name);
+                        }
+                    }
+                } finally {
+                    index.close();
+                }
+            } else if (artifact.isDirectory()) {
+                index(artifact, "", verifier, moduleInfos);
+            } else {
+                throw new MojoExecutionException("Could not locate artifact to verify: " + artifact);
+            }
+        } catch (IOException e) {
+            throw new MojoFailureException("Could not read " + artifact, e);
+        }
+        metrics.time("index", started);
+        int classes = verifier.classes(), packages = verifier.packages();
+        metrics.count("classes", classes);
+        metrics.count("packages", packages);
+        if (moduleInfos.isEmpty()) {
+            String message = "Could not find any module-info.class in " + artifact;
+            if (failOnError) {
+                throw new MojoFailureException(message);
+            }
+            getLog().warn(message);
+            return;
+        }
+        started = System.nanoTime();
+        List<String> problems = new ArrayList<String>();
+        for (Map.Entry<Integer, byte[]> entry : moduleInfos.entrySet()) {
+            String location = (entry.getKey() == 0 ? "" : ModuleScanner.VERSIONS + entry.getKey() + "/") + ModuleVerifier.MODULE_INFO;
+            for (String problem : verifier.verify(entry.getKey(), entry.getValue())) {
+                problems.add(location + ": " + problem);
+            }
+        }
+        metrics.time("verify", started);
+        metrics.count("descriptors.verified", moduleInfos.size());
+        metrics.count("problems", problems.size());
+        getLog().info("Verified " + moduleInfos.size() + " module-info.class files of " + artifact + " against "
+                + classes + " classes in " + packages + " packages");
+        if (!problems.isEmpty()) {
+            StringBuilder message = new StringBuilder("The module-info.class files of " + artifact + " do not match its content:");
+            for (String problem : problems) {
+                message.append("\n  ").append(problem);
+            }
+            if (failOnError) {
+                throw new MojoFailureException(message.toString());
+            }
+            getLog().warn(message.toString());
+        }
+    }
+
+    private static boolean isModuleInfo(String path) {
+        return ModuleVerifier.toVersion(path) != -1 && ModuleVerifier.toRelativePath(path).equals(ModuleVerifier.MODULE_INFO);
+    }
+
+    private static void index(File directory, String prefix, ModuleVerifier verifier, Map<Integer, byte[]> moduleInfos) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Could not list " + directory);
+        }
+        for (File file : files) {
+            String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                index(file, path + "/", verifier, moduleInfos);
+            } else if (isModuleInfo(path)) {
+                byte[] moduleInfo = new byte[(int) file.length()];
+                DataInputStream in = new DataInputStream(new FileInputStream(file));
+                try {
+                    in.readFully(moduleInfo);
+                } finally {
+                    in.close();
+                }
+                moduleInfos.put(ModuleVerifier.toVersion(path), moduleInfo);
+            } else {
+                verifier.add(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package codes.rafael.modulemaker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A comma-separated list of patterns that match the names of jar entries. Within a pattern, {@code ?} matches a single
+ * character and {@code *} matches any characters of a folder or file name while {@code **} matches any number of
+ * folders. A pattern that ends with {@code /} matches any entry within the named folder.
+ */
+class PathPattern {
+
+    private final List<Pattern> patterns;
+
+    private PathPattern(List<Pattern> patterns) {
+        this.patterns = patterns;
+    }
+
+    static PathPattern of(String patterns) {
+        List<Pattern> compiled = new ArrayList<Pattern>();
+        if (patterns != null) {
+            for (String pattern : patterns.split(",")) {
+                if (pattern.trim().length() > 0) {
+                    compiled.add(compile(pattern.trim()));
+                }
+            }
+        }
+        return new PathPattern(compiled);
+    }
+
+    private static Pattern compile(String pattern) {
+        if (pattern.endsWith("/")) {
+            pattern = pattern + "**";
+        }
+        StringBuilder regex = new StringBuilder();
+        int index = 0;
+        while (index < pattern.length()) {
+            char character = pattern.charAt(index);
+            if (pattern.startsWith("**/", index)) {
+                regex.append("(?:.*/)?");
+                index += 3;
+                continue;
+            } else if (pattern.startsWith("**", index)) {
+                regex.append(".*");
+                index += 2;
+                continue;
+            } else if (character == '*') {
+                regex.append("[^/]*");
+            } else if (character == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(character)));
+            }
+            index++;
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    boolean matches(String name) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
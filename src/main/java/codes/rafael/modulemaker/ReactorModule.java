@@ -0,0 +1,26 @@
+package codes.rafael.modulemaker;
+
+import java.util.List;
+
+/**
+ * A description of a project of the reactor for which a {@code module-info.class} file is created.
+ */
+public class ReactorModule extends ModuleDefinition {
+
+    /**
+     * The project of the reactor whose output directory contains the module, specified as {@code artifactId} or as
+     * {@code groupId:artifactId}.
+     */
+    String project;
+
+    /**
+     * A list of Java versions for which a {@code module-info.class} file is created in addition to those that are
+     * named by {@code java-version}, each with optional overrides of this module description.
+     */
+    List<Release> releases;
+
+    @Override
+    public String toString() {
+        return String.valueOf(project);
+    }
+}
@@ -0,0 +1,192 @@
+package codes.rafael.modulemaker;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+
+import java.util.Set;
+
+/**
+ * Collects the packages that are referenced by a class file. References are read from the class file's constant
+ * pool and from the descriptors, generic signatures and annotations of the class and its members. Method bodies are
+ * not parsed as any type that is referenced from code is also listed in the constant pool. A collector is not thread
+ * safe but can be reused for any number of class files.
+ */
+class ReferenceCollector extends ClassVisitor {
+
+    private static final int CONSTANT_CLASS = 7, CONSTANT_NAME_AND_TYPE = 12, CONSTANT_METHOD_TYPE = 16;
+
+    private final FieldVisitor fieldVisitor = new FieldVisitor(Opcodes.ASM9) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            return onDescriptor(descriptor);
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+            return onDescriptor(descriptor);
+        }
+    };
+
+    private final MethodVisitor methodVisitor = new MethodVisitor(Opcodes.ASM9) {
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            return annotationVisitor;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            return onDescriptor(descriptor);
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+            return onDescriptor(descriptor);
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+            return onDescriptor(descriptor);
+        }
+    };
+
+    private final AnnotationVisitor annotationVisitor = new AnnotationVisitor(Opcodes.ASM9) {
+        @Override
+        public void visit(String name, Object value) {
+            if (value instanceof Type) {
+                onDescriptor(((Type) value).getDescriptor());
+            }
+        }
+
+        @Override
+        public void visitEnum(String name, String descriptor, String value) {
+            onDescriptor(descriptor);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+            return onDescriptor(descriptor);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            return this;
+        }
+    };
+
+    private final SignatureVisitor signatureVisitor = new SignatureVisitor(Opcodes.ASM9) {
+        @Override
+        public void visitClassType(String name) {
+            onInternalName(name);
+        }
+    };
+
+    private Set<String> references;
+
+    ReferenceCollector() {
+        super(Opcodes.ASM9);
+    }
+
+    void collect(byte[] classFile, Set<String> references) {
+        this.references = references;
+        try {
+            ClassReader classReader = new ClassReader(classFile);
+            char[] buffer = new char[classReader.getMaxStringLength()];
+            for (int index = 1; index < classReader.getItemCount(); index++) {
+                int offset = classReader.getItem(index);
+                if (offset == 0) {
+                    continue;
+                }
+                switch (classFile[offset - 1]) {
+                    case CONSTANT_CLASS:
+                        String name = classReader.readUTF8(offset, buffer);
+                        if (name.startsWith("[")) {
+                            onDescriptor(name);
+                        } else {
+                            onInternalName(name);
+                        }
+                        break;
+                    case CONSTANT_NAME_AND_TYPE:
+                        onDescriptor(classReader.readUTF8(offset + 2, buffer));
+                        break;
+                    case CONSTANT_METHOD_TYPE:
+                        onDescriptor(classReader.readUTF8(offset, buffer));
+                        break;
+                }
+            }
+            classReader.accept(this, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        } finally {
+            this.references = null;
+        }
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        onSignature(signature);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        return onDescriptor(descriptor);
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return onDescriptor(descriptor);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        onDescriptor(descriptor);
+        onSignature(signature);
+        return fieldVisitor;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        onDescriptor(descriptor);
+        onSignature(signature);
+        if (exceptions != null) {
+            for (String exception : exceptions) {
+                onInternalName(exception);
+            }
+        }
+        return methodVisitor;
+    }
+
+    private AnnotationVisitor onDescriptor(String descriptor) {
+        int index = 0;
+        while ((index = descriptor.indexOf('L', index)) != -1) {
+            int end = descriptor.indexOf(';', index);
+            if (end == -1) {
+                break;
+            }
+            int separator = descriptor.lastIndexOf('/', end);
+            if (separator > index) {
+                references.add(descriptor.substring(index + 1, separator).replace('/', '.'));
+            }
+            index = end + 1;
+        }
+        return annotationVisitor;
+    }
+
+    private void onSignature(String signature) {
+        if (signature != null) {
+            new SignatureReader(signature).accept(signatureVisitor);
+        }
+    }
+
+    private void onInternalName(String name) {
+        int separator = name.lastIndexOf('/');
+        if (separator > 0) {
+            references.add(name.substring(0, separator).replace('/', '.'));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package codes.rafael.modulemaker;
+
+import java.util.List;
+
+/**
+ * A description of a {@code module-info.class} for a specific Java version. Any property that is set overrides the
+ * corresponding property of the module.
+ */
+public class Release {
+
+    /**
+     * The Java version in which this {@code module-info.class} file should be compiled.
+     */
+    int javaVersion;
+
+    /**
+     * A comma-separated list of packages of the module.
+     */
+    String packages;
+
+    /**
+     * A comma-separated list of required modules.
+     */
+    String requires;
+
+    /**
+     * A comma-separated list of statically required modules.
+     */
+    String staticRequires;
+
+    /**
+     * A comma-separated list of exported packages.
+     */
+    String exports;
+
+    /**
+     * A comma-separated list of opened packages.
+     */
+    String opens;
+
+    /**
+     * A list of qualified exports.
+     */
+    List<QualifiedPackage> qualifiedExports;
+
+    /**
+     * A list of qualified opens.
+     */
+    List<QualifiedPackage> qualifiedOpens;
+
+    /**
+     * The main class of this module.
+     */
+    String mainClass;
+
+    /**
+     * A comma-separated list of used services.
+     */
+    String uses;
+
+    /**
+     * A list of provided services.
+     */
+    List<Provide> provides;
+}
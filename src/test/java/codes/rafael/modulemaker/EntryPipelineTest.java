@@ -0,0 +1,62 @@
+package codes.rafael.modulemaker;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+
+public class EntryPipelineTest {
+
+    @Test
+    public void testOrderAndMethods() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        for (int index = 0; index < 50; index++) {
+            entries.put("foo/Bar" + index + ".class", JarWriterTest.content("bar" + index, 10 + index * 100));
+        }
+        JarIndex index = JarIndex.of(JarWriterTest.toJar(entries, ZipEntry.DEFLATED));
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        JarWriter writer = new JarWriter(Channels.newChannel(jar));
+        EntryPipeline pipeline = new EntryPipeline(writer, executorService, 4, 4096);
+        try {
+            int position = 0;
+            for (JarIndex.Entry entry : index.entries()) {
+                switch (position++ % 3) {
+                    case 0:
+                        pipeline.copy(index, entry);
+                        break;
+                    case 1:
+                        pipeline.add(index, entry, EntryPipeline.STORED);
+                        break;
+                    default:
+                        pipeline.add(index, entry, Deflater.BEST_COMPRESSION);
+                }
+            }
+            pipeline.finish();
+        } finally {
+            pipeline.cancel();
+            executorService.shutdownNow();
+        }
+        writer.finish();
+        assertEquals(17, pipeline.copied());
+        assertEquals(33, pipeline.compressed());
+        List<String> names = new ArrayList<String>();
+        int position = 0;
+        for (JarIndex.Entry entry : JarIndex.of(jar.toByteArray()).entries()) {
+            names.add(entry.name);
+            assertEquals(entry.name, position++ % 3 == 1 ? ZipEntry.STORED : ZipEntry.DEFLATED, entry.method);
+        }
+        assertEquals(new ArrayList<String>(entries.keySet()), names);
+        JarWriterTest.assertStream(entries, jar.toByteArray());
+    }
+}
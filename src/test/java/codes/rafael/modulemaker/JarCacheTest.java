@@ -0,0 +1,66 @@
+package codes.rafael.modulemaker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JarCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testStoreAndRestore() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        JarCache cache = new JarCache(directory, 1024 * 1024);
+        File source = JarWriterTest.write(temporaryFolder.newFile(), JarWriterTest.content("foo", 100));
+        cache.store("foo", source);
+        File target = new File(temporaryFolder.getRoot(), "target.jar");
+        assertTrue(cache.restore("foo", target));
+        assertArrayEquals(JarWriterTest.read(source), JarWriterTest.read(target));
+        assertFalse(cache.restore("bar", new File(temporaryFolder.getRoot(), "other.jar")));
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        File source = JarWriterTest.write(temporaryFolder.newFile(), JarWriterTest.content("foo", 100));
+        JarCache cache = new JarCache(directory, source.length() * 2 + 1);
+        cache.store("first", source);
+        cache.store("second", source);
+        long now = System.currentTimeMillis();
+        assertTrue(new File(directory, "first.jar").setLastModified(now - 20000));
+        assertTrue(new File(directory, "second.jar").setLastModified(now - 10000));
+        assertTrue(cache.restore("first", new File(temporaryFolder.getRoot(), "restored.jar")));
+        cache.store("third", source);
+        assertTrue(new File(directory, "first.jar").isFile());
+        assertFalse(new File(directory, "second.jar").isFile());
+        assertTrue(new File(directory, "third.jar").isFile());
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        File first = JarWriterTest.write(temporaryFolder.newFile(), JarWriterTest.content("foo", 100));
+        File second = JarWriterTest.write(temporaryFolder.newFile(), JarWriterTest.content("foo", 100));
+        File third = JarWriterTest.write(temporaryFolder.newFile(), JarWriterTest.content("bar", 100));
+        assertEquals(toKey(first), toKey(second));
+        assertNotEquals(toKey(first), toKey(third));
+        assertEquals(64, toKey(first).length());
+    }
+
+    private static String toKey(File file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        JarCache.update(digest, file);
+        return JarCache.toKey(digest);
+    }
+}
@@ -0,0 +1,138 @@
+package codes.rafael.modulemaker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JarIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCachedIndex() throws Exception {
+        File file = JarWriterTest.write(temporaryFolder.newFile("foo.jar"),
+                JarWriterTest.toJar(Collections.singletonMap("foo/Foo.class", new byte[] {1, 2, 3}), ZipEntry.STORED));
+        JarIndex first = JarIndex.of(file), second = JarIndex.of(file);
+        try {
+            assertEquals(first.centralDirectoryOffset(), second.centralDirectoryOffset());
+            assertEquals(1, second.entries().size());
+            assertArrayEquals(new byte[] {1, 2, 3}, second.read(second.get("foo/Foo.class")));
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void testRewrittenWithSameSizeAndModificationTime() throws Exception {
+        File file = JarWriterTest.write(temporaryFolder.newFile("foo.jar"), toJar("foo/Foo.class", new byte[] {1, 2, 3}, "abcd"));
+        long modified = file.lastModified(), size = file.length();
+        JarIndex.of(file).close();
+        JarWriterTest.write(file, toJar("foo/Foo.class", new byte[] {4, 5, 6, 7, 8, 9, 10}, ""));
+        file.setLastModified(modified);
+        assertEquals(size, file.length());
+        assertEquals(modified, file.lastModified());
+        JarIndex index = JarIndex.of(file);
+        try {
+            assertArrayEquals(new byte[] {4, 5, 6, 7, 8, 9, 10}, index.read(index.get("foo/Foo.class")));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void testHeaderExceedsCentralDirectory() throws Exception {
+        byte[] jar = toJar("foo/Foo.class", new byte[] {1, 2, 3}, "");
+        int header = getInt(jar, jar.length - JarIndex.END_OF_CENTRAL_DIRECTORY_SIZE + 16);
+        jar[header + 28] = (byte) 0xFF;
+        jar[header + 29] = (byte) 0xFF;
+        try {
+            JarIndex.of(jar);
+            fail();
+        } catch (IOException e) {
+            assertEquals("Central file header at " + header + " exceeds the central directory", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testTruncatedZip64Extra() throws Exception {
+        byte[] jar = toJar("foo/Foo.class", new byte[] {1, 2, 3}, "", new byte[] {(byte) 0xFE, (byte) 0xCA, 4, 0, 0, 0, 0, 0});
+        int header = getInt(jar, jar.length - JarIndex.END_OF_CENTRAL_DIRECTORY_SIZE + 16);
+        int extra = header + JarIndex.CENTRAL_FILE_HEADER_SIZE + "foo/Foo.class".length();
+        jar[extra] = 1;
+        jar[extra + 1] = 0;
+        for (int index = 0; index < 4; index++) {
+            jar[header + 20 + index] = (byte) 0xFF;
+        }
+        try {
+            JarIndex.of(jar);
+            fail();
+        } catch (IOException e) {
+            assertEquals("Truncated Zip64 extra field for foo/Foo.class", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testInvalidCentralDirectoryOffset() throws Exception {
+        byte[] jar = toJar("foo/Foo.class", new byte[] {1, 2, 3}, "");
+        jar[jar.length - JarIndex.END_OF_CENTRAL_DIRECTORY_SIZE + 19] = (byte) 0x7F;
+        File file = JarWriterTest.write(temporaryFolder.newFile("foo.jar"), jar);
+        try {
+            JarIndex.of(file);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Could not read central directory of " + file + ": "));
+        }
+    }
+
+    private static int getInt(byte[] bytes, int position) {
+        return ByteBuffer.wrap(bytes, position, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    static byte[] toJar(String name, byte[] content, String comment) throws Exception {
+        return toJar(name, content, comment, null);
+    }
+
+    /**
+     * Creates a jar file with a single stored entry where the comment allows for creating jar files of equal size
+     * with a central directory at different offsets.
+     */
+    static byte[] toJar(String name, byte[] content, String comment, byte[] extra) throws Exception {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        ZipOutputStream outputStream = new ZipOutputStream(jar);
+        try {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setTime(0L);
+            entry.setExtra(extra);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+            outputStream.putNextEntry(entry);
+            outputStream.write(content);
+            outputStream.closeEntry();
+            outputStream.setComment(comment);
+        } finally {
+            outputStream.close();
+        }
+        return jar.toByteArray();
+    }
+}
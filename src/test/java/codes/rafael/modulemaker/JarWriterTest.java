@@ -0,0 +1,230 @@
+package codes.rafael.modulemaker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class JarWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCopy() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("foo/", new byte[0]);
+        entries.put("foo/Bar.class", content("bar", 1000));
+        entries.put("foo/Qux.class", content("qux", 10));
+        JarIndex index = JarIndex.of(toJar(entries, ZipEntry.DEFLATED));
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        JarWriter writer = new JarWriter(Channels.newChannel(jar));
+        for (JarIndex.Entry entry : index.entries()) {
+            writer.copy(index, entry);
+        }
+        writer.finish();
+        assertStream(entries, jar.toByteArray());
+        assertFile(entries, write(temporaryFolder.newFile(), jar.toByteArray()));
+    }
+
+    @Test
+    public void testCopyStored() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("foo/Bar.class", content("bar", 1000));
+        JarIndex index = JarIndex.of(toJar(entries, ZipEntry.STORED));
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        JarWriter writer = new JarWriter(Channels.newChannel(jar));
+        for (JarIndex.Entry entry : index.entries()) {
+            writer.copy(index, entry);
+        }
+        writer.finish();
+        assertStream(entries, jar.toByteArray());
+        assertFile(entries, write(temporaryFolder.newFile(), jar.toByteArray()));
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("foo/Bar.class", content("bar", 1000));
+        entries.put("foo/Qux.class", content("qux", 10));
+        File file = write(temporaryFolder.newFile(), toJar(entries, ZipEntry.DEFLATED));
+        Map<String, byte[]> appended = new LinkedHashMap<String, byte[]>();
+        appended.put("module-info.class", content("module", 100));
+        JarIndex created = JarIndex.of(toJar(appended, ZipEntry.DEFLATED));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            JarIndex index = JarIndex.of(channel);
+            channel.truncate(index.centralDirectoryOffset());
+            channel.position(index.centralDirectoryOffset());
+            JarWriter writer = new JarWriter(channel);
+            for (JarIndex.Entry entry : index.entries()) {
+                writer.retain(entry);
+            }
+            for (JarIndex.Entry entry : created.entries()) {
+                writer.copy(created, entry);
+            }
+            writer.finish();
+        } finally {
+            randomAccessFile.close();
+        }
+        entries.putAll(appended);
+        assertFile(entries, file);
+        assertStream(entries, read(file));
+    }
+
+    @Test
+    public void testZip64EntryCount() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        for (int index = 0; index < 70000; index++) {
+            entries.put("foo/Bar" + index + ".class", content("bar" + index, 1));
+        }
+        JarIndex index = JarIndex.of(toJar(entries, ZipEntry.DEFLATED));
+        assertEquals(70000, index.entries().size());
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        JarWriter writer = new JarWriter(Channels.newChannel(jar));
+        for (JarIndex.Entry entry : index.entries()) {
+            writer.copy(index, entry);
+        }
+        writer.finish();
+        assertEquals(70000, JarIndex.of(jar.toByteArray()).entries().size());
+        assertStream(entries, jar.toByteArray());
+        assertFile(entries, write(temporaryFolder.newFile(), jar.toByteArray()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCannotRetainWithMetadata() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("foo/Bar.class", content("bar", 1));
+        JarIndex index = JarIndex.of(toJar(entries, ZipEntry.DEFLATED));
+        new JarWriter(Channels.newChannel(new ByteArrayOutputStream()), JarWriter.Metadata.of(new ZipEntry("foo")))
+                .retain(index.entries().get(0));
+    }
+
+    static byte[] content(String value, int repetitions) {
+        StringBuilder content = new StringBuilder();
+        for (int index = 0; index < repetitions; index++) {
+            content.append(value).append(index);
+        }
+        return content.toString().getBytes();
+    }
+
+    static byte[] toJar(Map<String, byte[]> entries, int method) throws IOException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        ZipOutputStream outputStream = new ZipOutputStream(jar);
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setMethod(method);
+                if (method == ZipEntry.STORED) {
+                    CRC32 crc = new CRC32();
+                    crc.update(entry.getValue());
+                    zipEntry.setSize(entry.getValue().length);
+                    zipEntry.setCompressedSize(entry.getValue().length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                outputStream.putNextEntry(zipEntry);
+                outputStream.write(entry.getValue());
+                outputStream.closeEntry();
+            }
+        } finally {
+            outputStream.close();
+        }
+        return jar.toByteArray();
+    }
+
+    static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(bytes);
+            return bytes;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Reads the jar file sequentially such that the local file headers and checksums are validated.
+     */
+    static void assertStream(Map<String, byte[]> expected, byte[] jar) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>(expected);
+        ZipInputStream inputStream = new ZipInputStream(new ByteArrayInputStream(jar));
+        try {
+            ZipEntry entry;
+            while ((entry = inputStream.getNextEntry()) != null) {
+                byte[] content = entries.remove(entry.getName());
+                assertNotNull("Unexpected entry: " + entry.getName(), content);
+                assertArrayEquals(entry.getName(), content, read(inputStream));
+            }
+        } finally {
+            inputStream.close();
+        }
+        assertEquals("Missing entries: " + entries.keySet(), 0, entries.size());
+    }
+
+    /**
+     * Reads the jar file by its central directory.
+     */
+    static void assertFile(Map<String, byte[]> expected, File file) throws IOException {
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            assertEquals(expected.size(), zipFile.size());
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                byte[] content = expected.get(entry.getName());
+                assertNotNull("Unexpected entry: " + entry.getName(), content);
+                InputStream inputStream = zipFile.getInputStream(entry);
+                try {
+                    assertArrayEquals(entry.getName(), content, read(inputStream));
+                } finally {
+                    inputStream.close();
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    static File write(File file, byte[] jar) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(jar);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,195 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWrite() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.time("scan", System.nanoTime());
+        metrics.time("quoted \"phase\"", System.nanoTime());
+        metrics.count("entries", 3);
+        metrics.count("entries", 4);
+        metrics.count("back\\slash\ttab\u0001", 1);
+        File file = new File(temporaryFolder.getRoot(), "metrics/foo-bar.json");
+        metrics.write(file, "inject-module", "default \"id\"", null);
+        Map<String, Object> json = (Map<String, Object>) new JsonParser(new String(JarWriterTest.read(file), "UTF-8")).parse();
+        assertEquals("inject-module", json.get("goal"));
+        assertEquals("default \"id\"", json.get("execution"));
+        assertTrue(json.containsKey("project"));
+        assertEquals(null, json.get("project"));
+        Map<String, Object> timings = (Map<String, Object>) json.get("timingsMillis");
+        assertEquals(2, timings.size());
+        assertTrue(timings.get("scan") instanceof Double);
+        assertTrue(timings.get("quoted \"phase\"") instanceof Double);
+        Map<String, Object> counters = (Map<String, Object>) json.get("counters");
+        assertEquals(2, counters.size());
+        assertEquals(7d, counters.get("entries"));
+        assertEquals(1d, counters.get("back\\slash\ttab\u0001"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWriteEmpty() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "foo.json");
+        new Metrics().write(file, "make-module", "default", "foo:bar:jar:1");
+        Map<String, Object> json = (Map<String, Object>) new JsonParser(new String(JarWriterTest.read(file), "UTF-8")).parse();
+        assertEquals("foo:bar:jar:1", json.get("project"));
+        assertTrue(((Map<String, Object>) json.get("timingsMillis")).isEmpty());
+        assertTrue(((Map<String, Object>) json.get("counters")).isEmpty());
+    }
+
+    @Test
+    public void testLog() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.time("scan", System.nanoTime() - 2000000);
+        metrics.time("write", System.nanoTime());
+        metrics.count("entries", 3);
+        RecordingLog log = new RecordingLog(false);
+        metrics.log(log);
+        assertEquals(1, log.info.size());
+        assertTrue(log.info.get(0), log.info.get(0).startsWith("Spent "));
+        assertTrue(log.info.get(0), log.info.get(0).contains(" ms in 2 phases, most in scan ("));
+        assertTrue(log.debug.isEmpty());
+        log = new RecordingLog(true);
+        metrics.log(log);
+        assertEquals(1, log.info.size());
+        assertEquals(2, log.debug.size());
+        assertEquals("Counters: entries=3", log.debug.get(1));
+    }
+
+    private static class RecordingLog extends SystemStreamLog {
+
+        private final boolean debugEnabled;
+
+        private final List<String> info = new ArrayList<String>(), debug = new ArrayList<String>();
+
+        private RecordingLog(boolean debugEnabled) {
+            this.debugEnabled = debugEnabled;
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            return debugEnabled;
+        }
+
+        @Override
+        public void info(CharSequence content) {
+            info.add(content.toString());
+        }
+
+        @Override
+        public void debug(CharSequence content) {
+            debug.add(content.toString());
+        }
+    }
+
+    /**
+     * A minimal parser for the JSON objects, strings, numbers and {@code null} values that metrics are written as.
+     */
+    private static class JsonParser {
+
+        private final String json;
+
+        private int position;
+
+        private JsonParser(String json) {
+            this.json = json;
+        }
+
+        Object parse() {
+            Object value = value();
+            skipWhitespace();
+            assertEquals("Trailing content", json.length(), position);
+            return value;
+        }
+
+        private Object value() {
+            skipWhitespace();
+            char character = json.charAt(position);
+            if (character == '{') {
+                return object();
+            } else if (character == '"') {
+                return string();
+            } else if (json.startsWith("null", position)) {
+                position += 4;
+                return null;
+            } else {
+                int start = position;
+                while (position < json.length() && "-+.eE0123456789".indexOf(json.charAt(position)) != -1) {
+                    position++;
+                }
+                return Double.valueOf(json.substring(start, position));
+            }
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<String, Object>();
+            expect('{');
+            skipWhitespace();
+            if (json.charAt(position) == '}') {
+                position++;
+                return object;
+            }
+            do {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                object.put(key, value());
+                skipWhitespace();
+            } while (json.charAt(position++) == ',');
+            assertEquals('}', json.charAt(position - 1));
+            return object;
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder string = new StringBuilder();
+            char character;
+            while ((character = json.charAt(position++)) != '"') {
+                assertTrue("Unescaped control character", character >= 0x20);
+                if (character == '\\') {
+                    character = json.charAt(position++);
+                    if (character == 'u') {
+                        string.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        position += 4;
+                    } else {
+                        assertTrue("Unexpected escape: " + character, character == '"' || character == '\\');
+                        string.append(character);
+                    }
+                } else {
+                    string.append(character);
+                }
+            }
+            return string.toString();
+        }
+
+        private void expect(char character) {
+            assertEquals(character, json.charAt(position++));
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModuleBatchMojoTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File outputDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        outputDirectory = new File(temporaryFolder.getRoot(), "modules");
+    }
+
+    @Test
+    public void testRequiresBetweenJars() throws Exception {
+        ModularizedArtifact foo = artifact("foo", jar("foo.jar", "foo/Foo.class", ReferenceCollectorTest.toClassFile("foo/Foo", "bar/Bar")));
+        foo.inferRequires = true;
+        ModularizedArtifact bar = artifact("bar", jar("bar.jar", "bar/Bar.class", ReferenceCollectorTest.toClassFile("bar/Bar", "java/lang/Object")));
+        mojo(true, foo, bar).execute();
+        assertTrue(ModuleDefinitionTest.describe(moduleInfo("foo.jar")).contains("requires bar"));
+        assertFalse(ModuleDefinitionTest.describe(moduleInfo("bar.jar")).contains("requires foo"));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        ModularizedArtifact foo = artifact("foo", jar("foo.jar", "foo/Foo.class", ReferenceCollectorTest.toClassFile("foo/Foo", "java/lang/Object")));
+        ModularizedArtifact bar = artifact("bar", JarWriterTest.write(temporaryFolder.newFile("bar.jar"), new byte[] {1, 2, 3}));
+        try {
+            mojo(true, foo, bar).execute();
+            fail();
+        } catch (MojoFailureException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Could not inject module-info.class into 1 jar files:"));
+            assertTrue(e.getMessage(), e.getMessage().contains("\n  " + bar.source + ": "));
+            assertFalse(e.getMessage(), e.getMessage().contains(foo.source));
+        }
+        assertTrue(new File(outputDirectory, "foo.jar").isFile());
+        assertFalse(new File(outputDirectory, "bar.jar").exists());
+    }
+
+    @Test
+    public void testFailureWithoutFailOnError() throws Exception {
+        ModularizedArtifact foo = artifact("foo", jar("foo.jar", "foo/Foo.class", ReferenceCollectorTest.toClassFile("foo/Foo", "java/lang/Object")));
+        ModularizedArtifact bar = artifact("bar", new File(temporaryFolder.getRoot(), "missing.jar"));
+        mojo(false, foo, bar).execute();
+        assertTrue(new File(outputDirectory, "foo.jar").isFile());
+        assertFalse(new File(outputDirectory, "missing.jar").exists());
+    }
+
+    @Test
+    public void testSourceInOutputDirectory() throws Exception {
+        assertTrue(outputDirectory.mkdir());
+        File source = JarWriterTest.write(new File(outputDirectory, "foo.jar"), JarWriterTest.toJar(
+                Collections.singletonMap("foo/Foo.class", ReferenceCollectorTest.toClassFile("foo/Foo", "java/lang/Object")),
+                ZipEntry.DEFLATED));
+        byte[] jar = JarWriterTest.read(source);
+        try {
+            mojo(true, artifact("foo", source)).execute();
+            fail();
+        } catch (MojoExecutionException e) {
+            assertEquals("Cannot overwrite source jar in output directory: " + source, e.getMessage());
+        }
+        assertArrayEquals(jar, JarWriterTest.read(source));
+    }
+
+    private ModuleBatchMojo mojo(boolean failOnError, ModularizedArtifact... artifacts) throws Exception {
+        MavenProject project = new MavenProject();
+        project.setArtifacts(new HashSet<Artifact>());
+        ModuleBatchMojo mojo = new ModuleBatchMojo();
+        set(mojo, "project", project);
+        set(mojo, "artifacts", Arrays.asList(artifacts));
+        set(mojo, "outputDirectory", outputDirectory);
+        set(mojo, "threads", 2);
+        set(mojo, "javaVersion", "9");
+        set(mojo, "failOnError", failOnError);
+        return mojo;
+    }
+
+    private File jar(String name, String entry, byte[] classFile) throws Exception {
+        return JarWriterTest.write(temporaryFolder.newFile(name), JarWriterTest.toJar(Collections.singletonMap(entry, classFile), ZipEntry.DEFLATED));
+    }
+
+    private byte[] moduleInfo(String name) throws Exception {
+        JarIndex index = JarIndex.of(new File(outputDirectory, name));
+        try {
+            return index.read(index.get("module-info.class"));
+        } finally {
+            index.close();
+        }
+    }
+
+    private static ModularizedArtifact artifact(String name, File source) {
+        ModularizedArtifact artifact = new ModularizedArtifact();
+        artifact.name = name;
+        artifact.source = source.getPath();
+        return artifact;
+    }
+
+    /**
+     * Sets a parameter of a mojo as Maven does when configuring it.
+     */
+    private static void set(Object mojo, String name, Object value) throws Exception {
+        for (Class<?> type = mojo.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(mojo, value);
+                return;
+            } catch (NoSuchFieldException ignored) {
+                // Continue with the super class.
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+}
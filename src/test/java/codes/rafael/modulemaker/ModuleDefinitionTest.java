@@ -0,0 +1,169 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class ModuleDefinitionTest {
+
+    @Test
+    public void testDetectPackages() throws Exception {
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        definition.packages = "qux";
+        definition.detectPackages = true;
+        ModuleContent content = new ModuleContent();
+        content.packages.add("foo.bar");
+        content.packages.add("baz");
+        content.packages.add("qux");
+        assertEquals(Arrays.asList("package baz", "package foo/bar", "package qux", "requires java.base"),
+                describe(definition.toModuleInfo(9, content, new SystemStreamLog())));
+    }
+
+    @Test
+    public void testExplicitPackagesRetainOrder() throws Exception {
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        definition.packages = "qux, baz";
+        ModuleContent content = new ModuleContent();
+        content.packages.add("foo.bar");
+        assertEquals(Arrays.asList("package qux", "package baz", "requires java.base"),
+                describe(definition.toModuleInfo(9, content, new SystemStreamLog())));
+    }
+
+    @Test
+    public void testDetectServicesMerged() throws Exception {
+        Provide provide = new Provide();
+        provide.services = "foo.Service, foo.Other";
+        provide.providers = "foo.Explicit";
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        definition.provides = Collections.singletonList(provide);
+        definition.detectServices = true;
+        ModuleContent content = new ModuleContent();
+        content.services.put("foo.Service", Arrays.asList("foo.Detected", "foo.Explicit"));
+        content.services.put("bar.Service", Collections.singletonList("bar.Detected"));
+        assertEquals(Arrays.asList("requires java.base",
+                "provides foo/Service with [foo/Explicit, foo/Detected]",
+                "provides foo/Other with [foo/Explicit]",
+                "provides bar/Service with [bar/Detected]"), describe(definition.toModuleInfo(9, content, new SystemStreamLog())));
+    }
+
+    @Test
+    public void testDetectServicesDisabled() throws Exception {
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        ModuleContent content = new ModuleContent();
+        content.services.put("foo.Service", Collections.singletonList("foo.Detected"));
+        assertEquals(Collections.singletonList("requires java.base"), describe(definition.toModuleInfo(9, content, new SystemStreamLog())));
+    }
+
+    @Test
+    public void testFilenames() throws Exception {
+        Release release = new Release();
+        release.javaVersion = 17;
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        SortedMap<Integer, ModuleDefinition> definitions = definition.definitions("11, 9", Collections.singletonList(release));
+        Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+        expected.put("module-info.class", 9);
+        expected.put("META-INF/versions/11/module-info.class", 11);
+        expected.put("META-INF/versions/17/module-info.class", 17);
+        assertEquals(expected, ModuleDefinition.filenames(definitions, false));
+        expected = new LinkedHashMap<String, Integer>();
+        expected.put("META-INF/versions/9/module-info.class", 9);
+        expected.put("META-INF/versions/11/module-info.class", 11);
+        expected.put("META-INF/versions/17/module-info.class", 17);
+        assertEquals(expected, ModuleDefinition.filenames(definitions, true));
+    }
+
+    @Test
+    public void testReleaseOverrides() throws Exception {
+        Release release = new Release();
+        release.javaVersion = 11;
+        release.requires = "bar";
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        definition.requires = "qux";
+        definition.mainClass = "foo.Main";
+        Map<String, byte[]> moduleInfos = ModuleDefinition.toModuleInfos(definition.definitions("9", Collections.singletonList(release)),
+                false,
+                new ModuleContent(),
+                new SystemStreamLog());
+        assertEquals(Arrays.asList("module-info.class", "META-INF/versions/11/module-info.class"), new ArrayList<String>(moduleInfos.keySet()));
+        assertEquals(53, toMajorVersion(moduleInfos.get("module-info.class")));
+        assertEquals(Arrays.asList("main-class foo/Main", "requires qux", "requires java.base"), describe(moduleInfos.get("module-info.class")));
+        assertEquals(55, toMajorVersion(moduleInfos.get("META-INF/versions/11/module-info.class")));
+        assertEquals(Arrays.asList("main-class foo/Main", "requires bar", "requires java.base"),
+                describe(moduleInfos.get("META-INF/versions/11/module-info.class")));
+    }
+
+    @Test(expected = MojoExecutionException.class)
+    public void testDuplicateRelease() throws Exception {
+        Release release = new Release();
+        release.javaVersion = 9;
+        new ModuleDefinition().definitions("9, 11", Arrays.asList(release, release));
+    }
+
+    @Test(expected = MojoExecutionException.class)
+    public void testInvalidJavaVersion() throws Exception {
+        new ModuleDefinition().definitions("8", null);
+    }
+
+    static int toMajorVersion(byte[] classFile) {
+        return (classFile[6] & 0xFF) << 8 | classFile[7] & 0xFF;
+    }
+
+    /**
+     * Describes the declarations of a {@code module-info.class} file in the order in which they are visited.
+     */
+    static List<String> describe(byte[] moduleInfo) {
+        final List<String> declarations = new ArrayList<String>();
+        new ClassReader(moduleInfo).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public ModuleVisitor visitModule(String name, int access, String version) {
+                return new ModuleVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitMainClass(String mainClass) {
+                        declarations.add("main-class " + mainClass);
+                    }
+
+                    @Override
+                    public void visitPackage(String aPackage) {
+                        declarations.add("package " + aPackage);
+                    }
+
+                    @Override
+                    public void visitRequire(String module, int access, String version) {
+                        declarations.add(((access & Opcodes.ACC_STATIC_PHASE) == 0 ? "requires " : "requires static ") + module);
+                    }
+
+                    @Override
+                    public void visitUse(String service) {
+                        declarations.add("uses " + service);
+                    }
+
+                    @Override
+                    public void visitProvide(String service, String... providers) {
+                        declarations.add("provides " + service + " with " + Arrays.asList(providers));
+                    }
+                };
+            }
+        }, 0);
+        return declarations;
+    }
+}
@@ -0,0 +1,119 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleFileMojoTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testHasDelta() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        List<String> filenames = Arrays.asList("module-info.class", "META-INF/versions/11/module-info.class");
+        ModuleScannerTest.touch(directory, "module-info.class");
+        assertTrue(ModuleFileMojo.hasDelta(directory, filenames, false, new DefaultBuildContext()));
+        ModuleScannerTest.touch(directory, "META-INF/versions/11/module-info.class");
+        assertFalse(ModuleFileMojo.hasDelta(directory, filenames, false, new DefaultBuildContext()));
+        assertFalse(ModuleFileMojo.hasDelta(directory, filenames, true, new DefaultBuildContext()));
+        ModuleScannerTest.touch(directory, "foo/bar.txt");
+        assertFalse(ModuleFileMojo.hasDelta(directory, filenames, true, new DefaultBuildContext()));
+        ModuleScannerTest.touch(directory, "META-INF/services/foo.Service");
+        assertTrue(ModuleFileMojo.hasDelta(directory, filenames, true, new DefaultBuildContext()));
+        assertFalse(ModuleFileMojo.hasDelta(directory, filenames, false, new DefaultBuildContext()));
+    }
+
+    @Test
+    public void testHasDeltaOfClassFile() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        ModuleScannerTest.touch(directory, "module-info.class");
+        ModuleScannerTest.touch(directory, "foo/Bar.class");
+        assertTrue(ModuleFileMojo.hasDelta(directory, Collections.singleton("module-info.class"), true, new DefaultBuildContext()));
+    }
+
+    @Test
+    public void testDefinitionFingerprint() {
+        assertEquals(fingerprint("foo", null), fingerprint("foo", null));
+        assertNotEquals(fingerprint("foo", null), fingerprint("bar", null));
+        assertNotEquals(fingerprint("foo", null), fingerprint("foo", ""));
+        assertNotEquals(fingerprint("foo", "bar;qux"), fingerprint("foo;packages:3:bar", "qux"));
+    }
+
+    @Test
+    public void testDependencyFingerprint() throws Exception {
+        File jar = JarWriterTest.write(temporaryFolder.newFile("foo.jar"), new byte[] {1, 2, 3});
+        File directory = temporaryFolder.newFolder();
+        Artifact compile = ModuleResolverTest.artifact("foo", Artifact.SCOPE_COMPILE, false, jar);
+        Artifact classes = ModuleResolverTest.artifact("bar", Artifact.SCOPE_COMPILE, false, directory);
+        String fingerprint = dependencies(compile, classes);
+        assertEquals(fingerprint, dependencies(classes, compile));
+        assertNotEquals(fingerprint, dependencies(ModuleResolverTest.artifact("foo", Artifact.SCOPE_PROVIDED, false, jar), classes));
+        assertNotEquals(fingerprint, dependencies(ModuleResolverTest.artifact("foo", Artifact.SCOPE_COMPILE, true, jar), classes));
+        assertTrue(directory.setLastModified(directory.lastModified() - 10000));
+        String touched = dependencies(compile, classes);
+        assertNotEquals(fingerprint, touched);
+        JarWriterTest.write(jar, new byte[] {1, 2, 3, 4});
+        assertNotEquals(touched, dependencies(compile, classes));
+    }
+
+    @Test
+    public void testWriteUnchanged() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        Map<String, byte[]> moduleInfos = Collections.singletonMap("META-INF/versions/11/module-info.class", new byte[] {1, 2, 3});
+        Metrics metrics = new Metrics();
+        List<File> written = ModuleFileMojo.write(directory, moduleInfos, metrics, new SystemStreamLog());
+        assertEquals(Collections.singletonList(new File(directory, "META-INF/versions/11/module-info.class")), written);
+        File file = written.get(0);
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        long lastModified = file.lastModified();
+        assertTrue(ModuleFileMojo.write(directory, moduleInfos, metrics, new SystemStreamLog()).isEmpty());
+        assertEquals(lastModified, file.lastModified());
+        assertArrayEquals(new byte[] {1, 2, 3}, JarWriterTest.read(file));
+        assertEquals(1, metrics.get("descriptors.written"));
+        assertEquals(1, metrics.get("descriptors.unchanged"));
+    }
+
+    @Test
+    public void testWriteChangedOfSameLength() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        File file = JarWriterTest.write(new File(directory, "module-info.class"), new byte[] {1, 2, 3});
+        List<File> written = ModuleFileMojo.write(directory,
+                Collections.singletonMap("module-info.class", new byte[] {1, 2, 4}),
+                new Metrics(),
+                new SystemStreamLog());
+        assertEquals(Collections.singletonList(file), written);
+        assertArrayEquals(new byte[] {1, 2, 4}, JarWriterTest.read(file));
+    }
+
+    private static String fingerprint(String name, String packages) {
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = name;
+        definition.packages = packages;
+        StringBuilder fingerprint = new StringBuilder();
+        definition.fingerprint(fingerprint);
+        return fingerprint.toString();
+    }
+
+    private static String dependencies(Artifact... artifacts) throws Exception {
+        StringBuilder fingerprint = new StringBuilder();
+        AbstractModuleMojo.dependencies(fingerprint, Arrays.asList(artifacts));
+        return fingerprint.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ModuleHashesAttribute;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ModuleHasherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testHash() throws Exception {
+        byte[] content = "foo".getBytes("UTF-8");
+        File file = JarWriterTest.write(temporaryFolder.newFile(), content);
+        assertArrayEquals(MessageDigest.getInstance(ModuleHasher.ALGORITHM).digest(content), ModuleHasher.hash(file));
+        assertEquals("2c26b46b68ffc68ff99b453c1d30413413422d706483bfa0f98a5e886266e7ae", ModuleHasher.toHex(ModuleHasher.hash(file)));
+    }
+
+    @Test
+    public void testHashRewrittenJar() throws Exception {
+        byte[] first = JarIndexTest.toJar("foo/Foo.class", new byte[] {1, 2, 3}, "abcd"), second = JarIndexTest.toJar("foo/Foo.class", new byte[] {4, 5, 6, 7, 8, 9, 10}, "");
+        File file = JarWriterTest.write(temporaryFolder.newFile("foo.jar"), first);
+        long modified = file.lastModified();
+        assertArrayEquals(MessageDigest.getInstance(ModuleHasher.ALGORITHM).digest(first), ModuleHasher.hash(file));
+        JarWriterTest.write(file, second);
+        file.setLastModified(modified);
+        assertArrayEquals(MessageDigest.getInstance(ModuleHasher.ALGORITHM).digest(second), ModuleHasher.hash(file));
+    }
+
+    @Test
+    public void testHashModules() throws Exception {
+        Map<String, File> modules = new LinkedHashMap<String, File>();
+        modules.put("qux", JarWriterTest.write(temporaryFolder.newFile(), "qux".getBytes("UTF-8")));
+        modules.put("bar", JarWriterTest.write(temporaryFolder.newFile(), "bar".getBytes("UTF-8")));
+        Map<String, byte[]> hashes = ModuleHasher.hash(modules, DirectExecutor.INSTANCE);
+        assertEquals(Arrays.asList("bar", "qux"), Arrays.asList(hashes.keySet().toArray()));
+        assertArrayEquals(MessageDigest.getInstance(ModuleHasher.ALGORITHM).digest("bar".getBytes("UTF-8")), hashes.get("bar"));
+        assertArrayEquals(MessageDigest.getInstance(ModuleHasher.ALGORITHM).digest("qux".getBytes("UTF-8")), hashes.get("qux"));
+    }
+
+    @Test
+    public void testModuleHashesOfRequiredModules() throws Exception {
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        definition.requires = "bar";
+        ModuleContent content = new ModuleContent();
+        content.hashes.put("bar", new byte[] {1, 2, 3});
+        content.hashes.put("qux", new byte[] {4, 5, 6});
+        ModuleHashesAttribute attribute = toModuleHashes(definition.toModuleInfo(9, content, new SystemStreamLog()));
+        assertEquals(ModuleHasher.ALGORITHM, attribute.algorithm);
+        assertEquals(Arrays.asList("bar"), attribute.modules);
+        assertEquals(1, attribute.hashes.size());
+        assertArrayEquals(new byte[] {1, 2, 3}, attribute.hashes.get(0));
+    }
+
+    @Test
+    public void testNoModuleHashes() throws Exception {
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        ModuleContent content = new ModuleContent();
+        content.hashes.put("bar", new byte[] {1, 2, 3});
+        assertNull(toModuleHashes(definition.toModuleInfo(9, content, new SystemStreamLog())));
+    }
+
+    private static ModuleHashesAttribute toModuleHashes(byte[] moduleInfo) {
+        final ModuleHashesAttribute[] attribute = new ModuleHashesAttribute[1];
+        new ClassReader(moduleInfo).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visitAttribute(Attribute value) {
+                if (value instanceof ModuleHashesAttribute) {
+                    attribute[0] = (ModuleHashesAttribute) value;
+                }
+            }
+        }, new Attribute[] {new ModuleHashesAttribute()}, 0);
+        return attribute[0];
+    }
+}
@@ -0,0 +1,135 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ModuleIndex index = new ModuleIndex();
+        index.put("foo/Bar.class", new ModuleIndex.Record(10, 20, "foo", new String[] {"foo", "qux"}));
+        index.put("Baz.class", new ModuleIndex.Record(30, 40, null, new String[0]));
+        File file = new File(temporaryFolder.getRoot(), "index/foo.index");
+        index.store(file);
+        ModuleIndex loaded = ModuleIndex.load(file);
+        assertEquals(2, loaded.records().size());
+        ModuleIndex.Record record = loaded.get("foo/Bar.class", 10, 20);
+        assertNotNull(record);
+        assertEquals("foo", record.aPackage);
+        assertArrayEquals(new String[] {"foo", "qux"}, record.references);
+        record = loaded.get("Baz.class", 30, 40);
+        assertNotNull(record);
+        assertNull(record.aPackage);
+        assertEquals(0, record.references.length);
+        assertNull(loaded.get("foo/Bar.class", 11, 20));
+        assertNull(loaded.get("foo/Bar.class", 10, 21));
+        assertEquals(1, file.getParentFile().listFiles().length);
+    }
+
+    @Test
+    public void testMissing() throws Exception {
+        assertTrue(ModuleIndex.load(new File(temporaryFolder.getRoot(), "foo.index")).records().isEmpty());
+    }
+
+    @Test
+    public void testVersionMismatch() throws Exception {
+        File file = temporaryFolder.newFile();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(0x4D4D4958);
+            out.writeInt(2);
+            out.writeInt(0);
+        } finally {
+            out.close();
+        }
+        assertTrue(ModuleIndex.load(file).records().isEmpty());
+    }
+
+    @Test
+    public void testInvalidPackageIndex() throws Exception {
+        File file = temporaryFolder.newFile();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(0x4D4D4958);
+            out.writeInt(1);
+            out.writeInt(1);
+            out.writeUTF("foo");
+            out.writeInt(1);
+            out.writeUTF("foo/Bar.class");
+            out.writeLong(10);
+            out.writeLong(20);
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeInt(1);
+        } finally {
+            out.close();
+        }
+        assertTrue(ModuleIndex.load(file).records().isEmpty());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        ModuleIndex index = new ModuleIndex();
+        index.put("foo/Bar.class", new ModuleIndex.Record(10, 20, "foo", new String[] {"foo", "qux"}));
+        File file = new File(temporaryFolder.getRoot(), "foo.index");
+        index.store(file);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(file.length() - 2);
+        } finally {
+            randomAccessFile.close();
+        }
+        assertTrue(ModuleIndex.load(file).records().isEmpty());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testUnchangedClassFilesAreNotParsed() throws Exception {
+        byte[] classFile = ReferenceCollectorTest.toClassFile("foo/Bar", "qux/Baz");
+        JarIndex jar = JarIndex.of(JarWriterTest.toJar(Collections.singletonMap("foo/Bar.class", classFile), ZipEntry.DEFLATED));
+        JarIndex.Entry entry = jar.get("foo/Bar.class");
+        File file = new File(temporaryFolder.getRoot(), "foo.index");
+        ModuleIndex index = new ModuleIndex();
+        index.put(entry.name, new ModuleIndex.Record(entry.size, entry.crc, "foo", new String[] {"recorded"}));
+        index.store(file);
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        ModuleContent content = definition.scan(null, jar, DirectExecutor.INSTANCE, true, file, new SystemStreamLog());
+        assertEquals(Collections.singleton("recorded"), content.references);
+        index = new ModuleIndex();
+        index.put(entry.name, new ModuleIndex.Record(entry.size, entry.crc + 1, "foo", new String[] {"recorded"}));
+        index.store(file);
+        content = definition.scan(null, jar, DirectExecutor.INSTANCE, true, file, new SystemStreamLog());
+        assertEquals(new HashSet<String>(Arrays.asList("foo", "qux")), content.references);
+        assertArrayEquals(new String[] {"foo", "qux"}, sorted(ModuleIndex.load(file).get(entry.name, entry.size, entry.crc).references));
+    }
+
+    private static String[] sorted(String[] values) {
+        String[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
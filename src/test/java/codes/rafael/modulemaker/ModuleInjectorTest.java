@@ -0,0 +1,275 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleInjectorTest {
+
+    private static final String MODULE_INFO = "module-info.class";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCopy() throws Exception {
+        Map<String, byte[]> entries = entries();
+        byte[] source = toJar(entries, 0L, false);
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        JarIndex index = JarIndex.of(source);
+        injector(null, new ModuleInjector.Compression.Original()).copy(index, new ModuleContent(), Channels.newChannel(jar), "source");
+        Map<String, byte[]> written = read(jar.toByteArray());
+        assertEquals("foo", ModuleResolver.toModuleName(written.remove(MODULE_INFO)));
+        assertManifest(written.remove(JarFile.MANIFEST_NAME));
+        assertEntries(entries, written);
+        JarWriterTest.assertFile(read(jar.toByteArray()), JarWriterTest.write(temporaryFolder.newFile(), jar.toByteArray()));
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        Map<String, byte[]> entries = entries();
+        File file = JarWriterTest.write(temporaryFolder.newFile(), toJar(entries, 0L, false));
+        ModuleInjector injector = injector(null, new ModuleInjector.Compression.Original());
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            JarIndex index = JarIndex.of(randomAccessFile.getChannel());
+            assertTrue(injector.canAppend(index));
+            injector.append(index, new ModuleContent(), randomAccessFile.getChannel());
+        } finally {
+            randomAccessFile.close();
+        }
+        Map<String, byte[]> written = read(JarWriterTest.read(file));
+        assertEquals("foo", ModuleResolver.toModuleName(written.remove(MODULE_INFO)));
+        assertManifest(written.remove(JarFile.MANIFEST_NAME));
+        assertEntries(entries, written);
+        JarWriterTest.assertFile(read(JarWriterTest.read(file)), file);
+        assertFalse(injector.canAppend(JarIndex.of(JarWriterTest.read(file))));
+    }
+
+    @Test
+    public void testDetectServices() throws Exception {
+        Map<String, byte[]> entries = entries();
+        entries.put("META-INF/services/foo.Service", "foo.Bar\nfoo.Qux # comment\n".getBytes("UTF-8"));
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        definition.detectServices = true;
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        new ModuleInjector(definition.definitions("9", null),
+                false,
+                true,
+                ModuleInjectMojo.creator(null),
+                false,
+                new ModuleInjector.Compression.Original(),
+                DirectExecutor.INSTANCE,
+                new Metrics(),
+                new SystemStreamLog()).copy(JarIndex.of(toJar(entries, 0L, false)), new ModuleContent(), Channels.newChannel(jar), "source");
+        Map<String, byte[]> written = read(jar.toByteArray());
+        assertEquals(Arrays.asList("requires java.base", "provides foo/Service with [foo/Bar, foo/Qux]"),
+                ModuleDefinitionTest.describe(written.remove(MODULE_INFO)));
+        assertManifest(written.remove(JarFile.MANIFEST_NAME));
+        assertEntries(entries, written);
+    }
+
+    @Test
+    public void testDeflate() throws Exception {
+        Map<String, byte[]> entries = entries();
+        byte[] source = toJar(entries, 0L, false);
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        int compressed;
+        try {
+            compressed = new ModuleInjector(definitions(),
+                    false,
+                    true,
+                    ModuleInjectMojo.creator(null),
+                    false,
+                    new ModuleInjector.Compression.Filtered(9, PathPattern.of("**/*.class"), PathPattern.of("foo/Qux.class")),
+                    executorService,
+                    new Metrics(),
+                    new SystemStreamLog()).copy(JarIndex.of(source), new ModuleContent(), Channels.newChannel(jar), "source");
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(2, compressed);
+        JarIndex index = JarIndex.of(jar.toByteArray());
+        assertEquals(ZipEntry.DEFLATED, index.get("foo/Bar.class").method);
+        assertEquals(ZipEntry.DEFLATED, index.get(MODULE_INFO).method);
+        assertEquals(ZipEntry.STORED, index.get("foo/Qux.class").method);
+        assertEquals(ZipEntry.STORED, index.get("foo/bar.txt").method);
+        Map<String, byte[]> written = read(jar.toByteArray());
+        assertEquals("foo", ModuleResolver.toModuleName(written.remove(MODULE_INFO)));
+        assertManifest(written.remove(JarFile.MANIFEST_NAME));
+        assertEntries(entries, written);
+    }
+
+    @Test
+    public void testNestedJar() throws Exception {
+        Map<String, byte[]> entries = entries();
+        byte[] nested = toJar(entries, 0L, false);
+        Map<String, byte[]> outer = new LinkedHashMap<String, byte[]>();
+        outer.put("BOOT-INF/lib/nested.jar", nested);
+        outer.put("BOOT-INF/classes/qux/Baz.class", JarWriterTest.content("baz", 100));
+        JarIndex index = JarIndex.of(JarWriterTest.toJar(outer, ZipEntry.STORED));
+        JarIndex.Entry entry = index.get("BOOT-INF/lib/nested.jar");
+        File file = temporaryFolder.newFile();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            injector(null, new ModuleInjector.Compression.Original()).copy(index,
+                    entry,
+                    JarIndex.of(index.read(entry)),
+                    new ModuleContent(),
+                    randomAccessFile.getChannel(),
+                    "outer");
+        } finally {
+            randomAccessFile.close();
+        }
+        byte[] jar = JarWriterTest.read(file);
+        Map<String, byte[]> written = read(jar);
+        assertEquals(outer.keySet(), written.keySet());
+        assertArrayEquals(outer.get("BOOT-INF/classes/qux/Baz.class"), written.get("BOOT-INF/classes/qux/Baz.class"));
+        assertEquals(ZipEntry.STORED, JarIndex.of(jar).get("BOOT-INF/lib/nested.jar").method);
+        Map<String, byte[]> rewritten = read(written.get("BOOT-INF/lib/nested.jar"));
+        assertEquals("foo", ModuleResolver.toModuleName(rewritten.remove(MODULE_INFO)));
+        assertManifest(rewritten.remove(JarFile.MANIFEST_NAME));
+        assertEntries(entries, rewritten);
+    }
+
+    @Test
+    public void testReproducible() throws Exception {
+        Map<String, byte[]> entries = entries();
+        ModuleInjector injector = injector("2020-01-01T00:00:00Z", new ModuleInjector.Compression.Original());
+        ByteArrayOutputStream first = new ByteArrayOutputStream(), second = new ByteArrayOutputStream();
+        injector.copy(JarIndex.of(toJar(entries, 1000000000000L, false)), new ModuleContent(), Channels.newChannel(first), "first");
+        injector.copy(JarIndex.of(toJar(entries, 1500000000000L, true)), new ModuleContent(), Channels.newChannel(second), "second");
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+        Map<String, byte[]> written = read(first.toByteArray());
+        assertEquals("foo", ModuleResolver.toModuleName(written.remove(MODULE_INFO)));
+        assertManifest(written.remove(JarFile.MANIFEST_NAME));
+        assertEntries(entries, written);
+    }
+
+    private static ModuleInjector injector(String outputTimestamp, ModuleInjector.Compression compression) throws Exception {
+        return new ModuleInjector(definitions(),
+                false,
+                true,
+                ModuleInjectMojo.creator(outputTimestamp),
+                outputTimestamp != null,
+                compression,
+                DirectExecutor.INSTANCE,
+                new Metrics(),
+                new SystemStreamLog());
+    }
+
+    private static SortedMap<Integer, ModuleDefinition> definitions() throws Exception {
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "foo";
+        definition.exports = "foo";
+        return definition.definitions("9", null);
+    }
+
+    private static Map<String, byte[]> entries() {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("foo/", new byte[0]);
+        entries.put("foo/Bar.class", JarWriterTest.content("bar", 1000));
+        entries.put("foo/Qux.class", JarWriterTest.content("qux", 100));
+        entries.put("foo/bar.txt", JarWriterTest.content("text", 100));
+        return entries;
+    }
+
+    /**
+     * Creates a jar file with a manifest that stores all entries with the given modification time and in the
+     * given order.
+     */
+    private static byte[] toJar(Map<String, byte[]> entries, long time, boolean reversed) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Created-By", "test");
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        JarOutputStream outputStream = new JarOutputStream(jar, manifest);
+        try {
+            List<String> names = new ArrayList<String>(entries.keySet());
+            if (reversed) {
+                Collections.reverse(names);
+            }
+            for (String name : names) {
+                byte[] content = entries.get(name);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                ZipEntry entry = new ZipEntry(name);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCompressedSize(content.length);
+                entry.setCrc(crc.getValue());
+                if (time != 0L) {
+                    entry.setTime(time);
+                }
+                outputStream.putNextEntry(entry);
+                outputStream.write(content);
+                outputStream.closeEntry();
+            }
+        } finally {
+            outputStream.close();
+        }
+        return jar.toByteArray();
+    }
+
+    /**
+     * Reads all entries of a jar file sequentially such that the local file headers and checksums are validated.
+     */
+    private static Map<String, byte[]> read(byte[] jar) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        ZipInputStream inputStream = new ZipInputStream(new ByteArrayInputStream(jar));
+        try {
+            ZipEntry entry;
+            while ((entry = inputStream.getNextEntry()) != null) {
+                assertTrue("Duplicate entry: " + entry.getName(), entries.put(entry.getName(), JarWriterTest.read(inputStream)) == null);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return entries;
+    }
+
+    private static void assertManifest(byte[] manifest) throws IOException {
+        assertNotNull(manifest);
+        assertEquals("test", new Manifest(new ByteArrayInputStream(manifest)).getMainAttributes().getValue("Created-By"));
+    }
+
+    private static void assertEntries(Map<String, byte[]> expected, Map<String, byte[]> entries) {
+        entries.remove("META-INF/");
+        assertEquals(expected.keySet(), entries.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), entries.get(entry.getKey()));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ModuleReactorMojoTest {
+
+    @Test
+    public void testRequires() throws Exception {
+        Map<ReactorModule, MavenProject> projects = new LinkedHashMap<ReactorModule, MavenProject>();
+        Map<ReactorModule, ModuleContent> contents = new LinkedHashMap<ReactorModule, ModuleContent>();
+        ReactorModule foo = module("foo", projects), bar = module("bar", projects), qux = module("qux", projects);
+        projects.get(foo).setDependencies(Arrays.asList(
+                dependency("bar", Artifact.SCOPE_COMPILE, false),
+                dependency("qux", Artifact.SCOPE_PROVIDED, false)));
+        projects.get(bar).setDependencies(Collections.singletonList(dependency("qux", null, true)));
+        contents.put(foo, content(Arrays.asList("foo"), Arrays.asList("foo", "bar", "bar.impl", "qux", "java.util")));
+        contents.put(bar, content(Arrays.asList("bar", "bar.impl", "split"), Arrays.asList("bar", "qux", "split")));
+        contents.put(qux, content(Arrays.asList("qux", "split"), Arrays.asList("qux", "java.lang")));
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            assertEquals(3, ModuleReactorMojo.requires(contents, projects, executorService, new SystemStreamLog()));
+        } finally {
+            executorService.shutdownNow();
+        }
+        Map<String, Boolean> expected = new TreeMap<String, Boolean>();
+        expected.put("bar", false);
+        expected.put("qux", true);
+        assertEquals(expected, contents.get(foo).requires);
+        assertEquals(new HashSet<String>(Arrays.asList("foo", "java.util")), contents.get(foo).references);
+        assertEquals(Collections.singletonMap("qux", true), contents.get(bar).requires);
+        assertEquals(new HashSet<String>(Arrays.asList("bar", "split")), contents.get(bar).references);
+        assertEquals(Collections.<String, Boolean>emptyMap(), contents.get(qux).requires);
+        assertEquals(new HashSet<String>(Arrays.asList("qux", "java.lang")), contents.get(qux).references);
+    }
+
+    @Test
+    public void testCyclicRequires() throws Exception {
+        Map<ReactorModule, MavenProject> projects = new LinkedHashMap<ReactorModule, MavenProject>();
+        Map<ReactorModule, ModuleContent> contents = new LinkedHashMap<ReactorModule, ModuleContent>();
+        contents.put(module("foo", projects), content(Arrays.asList("foo"), Arrays.asList("bar")));
+        contents.put(module("bar", projects), content(Arrays.asList("bar"), Arrays.asList("qux")));
+        contents.put(module("qux", projects), content(Arrays.asList("qux"), Arrays.asList("bar")));
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            ModuleReactorMojo.requires(contents, projects, executorService, new SystemStreamLog());
+            fail();
+        } catch (MojoExecutionException e) {
+            assertEquals("Cyclic requires within the reactor: bar -> qux -> bar", e.getMessage());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNoCycle() {
+        Map<ReactorModule, MavenProject> projects = new LinkedHashMap<ReactorModule, MavenProject>();
+        Map<ReactorModule, ModuleContent> contents = new LinkedHashMap<ReactorModule, ModuleContent>();
+        ModuleContent foo = new ModuleContent(), bar = new ModuleContent();
+        foo.requires.put("bar", false);
+        foo.requires.put("qux", false);
+        bar.requires.put("qux", true);
+        bar.requires.put("java.sql", false);
+        contents.put(module("foo", projects), foo);
+        contents.put(module("bar", projects), bar);
+        contents.put(module("qux", projects), new ModuleContent());
+        assertNull(ModuleReactorMojo.cycle(contents));
+    }
+
+    private static ReactorModule module(String name, Map<ReactorModule, MavenProject> projects) {
+        ReactorModule module = new ReactorModule();
+        module.name = name;
+        module.project = name;
+        MavenProject project = new MavenProject();
+        project.setGroupId("codes.rafael.modulemaker");
+        project.setArtifactId(name);
+        projects.put(module, project);
+        return module;
+    }
+
+    private static Dependency dependency(String artifactId, String scope, boolean optional) {
+        Dependency dependency = new Dependency();
+        dependency.setGroupId("codes.rafael.modulemaker");
+        dependency.setArtifactId(artifactId);
+        dependency.setScope(scope);
+        dependency.setOptional(optional);
+        return dependency;
+    }
+
+    private static ModuleContent content(Iterable<String> packages, Iterable<String> references) {
+        ModuleContent content = new ModuleContent();
+        for (String aPackage : packages) {
+            content.packages.add(aPackage);
+        }
+        for (String reference : references) {
+            content.references.add(reference);
+        }
+        return content;
+    }
+}
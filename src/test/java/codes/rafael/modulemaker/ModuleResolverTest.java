@@ -0,0 +1,232 @@
+package codes.rafael.modulemaker;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+public class ModuleResolverTest {
+
+    private final Log log = new SystemStreamLog();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAutomaticModuleName() {
+        assertEquals("foo.bar", ModuleResolver.toAutomaticModuleName("foo-bar-1.2.3.jar"));
+        assertEquals("foo.bar", ModuleResolver.toAutomaticModuleName("foo_bar.jar"));
+        assertEquals("foo.bar.baz", ModuleResolver.toAutomaticModuleName("foo-bar-baz-2.jar"));
+        assertEquals("foo.bar", ModuleResolver.toAutomaticModuleName("-foo--bar-.jar"));
+        assertEquals("foo", ModuleResolver.toAutomaticModuleName("foo"));
+    }
+
+    @Test
+    public void testModuleName() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("META-INF/MANIFEST.MF", manifest("qux"));
+        assertEquals("qux", ModuleResolver.toModuleName(JarIndex.of(JarWriterTest.toJar(entries, ZipEntry.DEFLATED))));
+        entries.put("META-INF/versions/11/module-info.class", moduleInfo("bar"));
+        assertEquals("bar", ModuleResolver.toModuleName(JarIndex.of(JarWriterTest.toJar(entries, ZipEntry.DEFLATED))));
+        entries.put("module-info.class", moduleInfo("foo"));
+        assertEquals("foo", ModuleResolver.toModuleName(JarIndex.of(JarWriterTest.toJar(entries, ZipEntry.DEFLATED))));
+        assertNull(ModuleResolver.toModuleName(JarIndex.of(JarWriterTest.toJar(Collections.singletonMap("foo/Bar.class", new byte[1]), ZipEntry.DEFLATED))));
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        Map<String, byte[]> named = new LinkedHashMap<String, byte[]>();
+        named.put("module-info.class", moduleInfo("foo.module"));
+        named.put("foo/Foo.class", ReferenceCollectorTest.toClassFile("foo/Foo", "java/lang/Object"));
+        Map<String, byte[]> automatic = new LinkedHashMap<String, byte[]>();
+        automatic.put("META-INF/MANIFEST.MF", manifest("bar.module"));
+        automatic.put("bar/Bar.class", ReferenceCollectorTest.toClassFile("bar/Bar", "java/lang/Object"));
+        ModuleResolver resolver = ModuleResolver.of(Arrays.asList(
+                artifact("foo", Artifact.SCOPE_COMPILE, false, jar("foo.jar", named)),
+                artifact("bar", Artifact.SCOPE_PROVIDED, false, jar("bar.jar", automatic)),
+                artifact("qux", Artifact.SCOPE_COMPILE, true, jar("qux-lib-1.0.jar", Collections.singletonMap("qux/Qux.class", new byte[1]))),
+                artifact("baz", Artifact.SCOPE_COMPILE, false, jar("baz-1.0.jar", Collections.singletonMap("baz/Baz.class", new byte[1]))),
+                artifact("runtime", Artifact.SCOPE_RUNTIME, false, jar("runtime.jar", Collections.singletonMap("runtime/Runtime.class", new byte[1]))),
+                artifact("test", Artifact.SCOPE_TEST, false, jar("test.jar", Collections.singletonMap("test/Test.class", new byte[1])))), DirectExecutor.INSTANCE, log);
+        ModuleContent content = new ModuleContent();
+        content.packages.add("own");
+        content.references.addAll(Arrays.asList("own", "foo", "bar", "qux", "runtime", "test", "unknown"));
+        resolver.resolve(content, log);
+        Map<String, Boolean> expected = new TreeMap<String, Boolean>();
+        expected.put("foo.module", false);
+        expected.put("bar.module", true);
+        expected.put("qux.lib", true);
+        assertEquals(expected, content.requires);
+        assertEquals("baz-1.0.jar", resolver.locate("baz").getName());
+        assertNull(resolver.locate("runtime"));
+    }
+
+    @Test
+    public void testResolveStaticOnlyIfAllStatic() throws Exception {
+        File jar = jar("foo.jar", Collections.singletonMap("foo/Foo.class", new byte[1]));
+        ModuleResolver resolver = ModuleResolver.of(Collections.singletonList(artifact("foo", Artifact.SCOPE_PROVIDED, false, jar)),
+                DirectExecutor.INSTANCE,
+                log);
+        ModuleContent content = new ModuleContent();
+        content.references.add("foo");
+        resolver.resolve(content, log);
+        assertEquals(Collections.singletonMap("foo", true), content.requires);
+        content.requires.put("foo", false);
+        resolver.resolve(content, log);
+        assertEquals(Collections.singletonMap("foo", false), content.requires);
+    }
+
+    @Test
+    public void testResolveDirectory() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        ModuleScannerTest.write(directory, "META-INF/MANIFEST.MF", manifest("foo.module"));
+        ModuleScannerTest.touch(directory, "foo/Foo.class");
+        ModuleResolver resolver = ModuleResolver.of(Collections.singletonList(artifact("foo", Artifact.SCOPE_COMPILE, false, directory)),
+                DirectExecutor.INSTANCE,
+                log);
+        ModuleContent content = new ModuleContent();
+        content.references.add("foo");
+        resolver.resolve(content, log);
+        assertEquals(Collections.singletonMap("foo.module", false), content.requires);
+        assertEquals(directory, resolver.locate("foo.module"));
+    }
+
+    @Test
+    public void testResolveSystemModule() throws Exception {
+        assumeTrue(isModular());
+        ModuleResolver resolver = ModuleResolver.of(Collections.<Artifact>emptyList(), DirectExecutor.INSTANCE, log);
+        ModuleContent content = new ModuleContent();
+        content.references.addAll(Arrays.asList("java.lang", "java.sql", "java.util.logging"));
+        resolver.resolve(content, log);
+        Map<String, Boolean> expected = new TreeMap<String, Boolean>();
+        expected.put("java.logging", false);
+        expected.put("java.sql", false);
+        assertEquals(expected, content.requires);
+    }
+
+    @Test
+    public void testInferRequires() throws Exception {
+        File jar = jar("foo.jar", Collections.singletonMap("foo/Foo.class", ReferenceCollectorTest.toClassFile("foo/Foo", "java/lang/Object")));
+        ModuleResolver resolver = ModuleResolver.of(Collections.singletonList(artifact("foo", Artifact.SCOPE_PROVIDED, false, jar)),
+                DirectExecutor.INSTANCE,
+                log);
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("bar/Bar.class", ReferenceCollectorTest.toClassFile("bar/Bar", "foo/Foo"));
+        entries.put("bar/Qux.class", ReferenceCollectorTest.toClassFile("bar/Qux", "bar/Bar"));
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = "bar";
+        definition.inferRequires = true;
+        ModuleContent content = definition.scan(null,
+                JarIndex.of(JarWriterTest.toJar(entries, ZipEntry.DEFLATED)),
+                DirectExecutor.INSTANCE,
+                resolver,
+                null,
+                log);
+        assertEquals(Collections.singletonMap("foo", true), content.requires);
+        assertEquals(Arrays.asList("requires static foo", "requires java.base"),
+                ModuleDefinitionTest.describe(definition.toModuleInfo(9, content, log)));
+    }
+
+    @Test
+    public void testResolveNamedJars() throws Exception {
+        File first = jar("first-lib-1.0.jar", Collections.singletonMap("foo/Foo.class", ReferenceCollectorTest.toClassFile("foo/Foo", "java/lang/Object")));
+        File second = jar("second-lib-1.0.jar", Collections.singletonMap("bar/Bar.class", ReferenceCollectorTest.toClassFile("bar/Bar", "foo/Foo")));
+        File split = jar("split.jar", Collections.singletonMap("foo/Split.class", new byte[1]));
+        Map<File, String> names = new LinkedHashMap<File, String>();
+        names.put(first, "first.module");
+        names.put(second, "second.module");
+        ModuleResolver resolver = ModuleResolver.of(Arrays.asList(
+                artifact("split", Artifact.SCOPE_COMPILE, false, split),
+                artifact("first", Artifact.SCOPE_PROVIDED, false, first)), names, false, DirectExecutor.INSTANCE, log);
+        assertEquals(first, resolver.locate("first.module"));
+        assertEquals(second, resolver.locate("second.module"));
+        assertNull(resolver.locate("first.lib"));
+        ModularizedArtifact artifact = new ModularizedArtifact();
+        artifact.name = "second.module";
+        artifact.inferRequires = true;
+        ModuleContent content = artifact.scan(null, JarIndex.of(second), DirectExecutor.INSTANCE, resolver, null, log);
+        assertEquals(Collections.singletonMap("first.module", true), content.requires);
+        assertEquals(Arrays.asList("requires static first.module", "requires java.base"),
+                ModuleDefinitionTest.describe(artifact.toModuleInfo(9, content, log)));
+    }
+
+    @Test
+    public void testResolveRuntime() throws Exception {
+        File jar = jar("foo.jar", Collections.singletonMap("foo/Foo.class", new byte[1]));
+        ModuleResolver resolver = ModuleResolver.of(Arrays.asList(
+                artifact("foo", Artifact.SCOPE_RUNTIME, false, jar),
+                artifact("test", Artifact.SCOPE_TEST, false, jar("test.jar", Collections.singletonMap("test/Test.class", new byte[1])))),
+                Collections.<File, String>emptyMap(),
+                true,
+                DirectExecutor.INSTANCE,
+                log);
+        ModuleContent content = new ModuleContent();
+        content.references.addAll(Arrays.asList("foo", "test"));
+        resolver.resolve(content, log);
+        assertEquals(Collections.singletonMap("foo", false), content.requires);
+    }
+
+    @Test
+    public void testResolveRewrittenJar() throws Exception {
+        File jar = JarWriterTest.write(temporaryFolder.newFile("foo.jar"), JarIndexTest.toJar("foo/Foo.class", new byte[] {1, 2, 3}, "abcd"));
+        long modified = jar.lastModified();
+        List<Artifact> artifacts = Collections.singletonList(artifact("foo", Artifact.SCOPE_COMPILE, false, jar));
+        ModuleContent content = new ModuleContent();
+        content.references.addAll(Arrays.asList("foo", "bar"));
+        ModuleResolver.of(artifacts, DirectExecutor.INSTANCE, log).resolve(content, log);
+        assertEquals(Collections.singletonMap("foo", false), content.requires);
+        JarWriterTest.write(jar, JarIndexTest.toJar("bar/Bar.class", new byte[] {4, 5, 6, 7, 8, 9, 10}, ""));
+        jar.setLastModified(modified);
+        content = new ModuleContent();
+        content.references.add("foo");
+        ModuleResolver.of(artifacts, DirectExecutor.INSTANCE, log).resolve(content, log);
+        assertEquals(Collections.<String, Boolean>emptyMap(), content.requires);
+    }
+
+    static Artifact artifact(String artifactId, String scope, boolean optional, File file) {
+        Artifact artifact = new DefaultArtifact("codes.rafael.modulemaker", artifactId, "1.0", scope, "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setOptional(optional);
+        artifact.setFile(file);
+        return artifact;
+    }
+
+    File jar(String name, Map<String, byte[]> entries) throws Exception {
+        return JarWriterTest.write(temporaryFolder.newFile(name), JarWriterTest.toJar(entries, ZipEntry.DEFLATED));
+    }
+
+    static byte[] moduleInfo(String name) throws Exception {
+        ModuleDefinition definition = new ModuleDefinition();
+        definition.name = name;
+        return definition.toModuleInfo(9, new ModuleContent(), new SystemStreamLog());
+    }
+
+    static byte[] manifest(String automaticModuleName) {
+        return ("Manifest-Version: 1.0\r\nAutomatic-Module-Name: " + automaticModuleName + "\r\n\r\n").getBytes();
+    }
+
+    private static boolean isModular() {
+        try {
+            Class.forName("java.lang.module.ModuleFinder");
+            return true;
+        } catch (ClassNotFoundException ignored) {
+            return false;
+        }
+    }
+}
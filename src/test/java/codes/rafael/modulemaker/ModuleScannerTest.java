@@ -0,0 +1,96 @@
+package codes.rafael.modulemaker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleScannerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testToPackage() {
+        assertEquals("foo", ModuleScanner.toPackage("foo/Bar.class"));
+        assertEquals("foo.bar", ModuleScanner.toPackage("foo/bar/baz.txt"));
+        assertEquals("foo", ModuleScanner.toPackage("META-INF/versions/11/foo/Bar.class"));
+        assertNull(ModuleScanner.toPackage("Bar.class"));
+        assertNull(ModuleScanner.toPackage("META-INF/MANIFEST.MF"));
+        assertNull(ModuleScanner.toPackage("META-INF/services/foo.Bar"));
+        assertNull(ModuleScanner.toPackage("META-INF/versions/11"));
+        assertNull(ModuleScanner.toPackage("foo-bar/Baz.class"));
+        assertNull(ModuleScanner.toPackage("1foo/Bar.class"));
+        assertNull(ModuleScanner.toPackage("foo//Bar.class"));
+    }
+
+    @Test
+    public void testScanJar() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("foo/", new byte[0]);
+        entries.put("foo/Bar.class", new byte[1]);
+        entries.put("foo/bar/", new byte[0]);
+        entries.put("qux/baz.txt", new byte[1]);
+        entries.put("META-INF/MANIFEST.MF", new byte[1]);
+        entries.put("META-INF/versions/11/baz/Qux.class", new byte[1]);
+        entries.put("Foo.class", new byte[1]);
+        JarIndex index = JarIndex.of(JarWriterTest.toJar(entries, ZipEntry.DEFLATED));
+        ModuleContent content = new ModuleScanner(DirectExecutor.INSTANCE, false).scan(index);
+        assertEquals(new HashSet<String>(Arrays.asList("foo", "qux", "baz")), content.packages);
+        assertEquals(0, content.references.size());
+    }
+
+    @Test
+    public void testScanDirectory() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        touch(directory, "foo/Bar.class");
+        touch(directory, "foo/bar/baz/Qux.class");
+        touch(directory, "qux/baz.txt");
+        touch(directory, "META-INF/MANIFEST.MF");
+        touch(directory, "Foo.class");
+        assertTrue(new File(directory, "empty").mkdir());
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            ModuleContent content = new ModuleScanner(executorService, false).scan(directory);
+            assertEquals(new HashSet<String>(Arrays.asList("foo", "foo.bar.baz", "qux")), content.packages);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testScanServices() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        touch(directory, "foo/Bar.class");
+        write(directory, "META-INF/services/foo.Service", "# comment\r\nfoo.Bar # trailing\n\n  foo.Qux  \r\n".getBytes("UTF-8"));
+        write(directory, "META-INF/services/foo.Empty", "# comment\n".getBytes("UTF-8"));
+        write(directory, "META-INF/services/nested/foo.Service", "foo.Baz".getBytes("UTF-8"));
+        ModuleContent content = new ModuleScanner(DirectExecutor.INSTANCE, false, true, new ModuleIndex()).scan(directory);
+        assertEquals(Collections.singletonMap("foo.Service", Arrays.asList("foo.Bar", "foo.Qux")), content.services);
+    }
+
+    static File touch(File directory, String path) throws Exception {
+        return write(directory, path, new byte[1]);
+    }
+
+    static File write(File directory, String path, byte[] content) throws Exception {
+        File file = new File(directory, path);
+        if (!file.getParentFile().isDirectory()) {
+            assertTrue(file.getParentFile().mkdirs());
+        }
+        return JarWriterTest.write(file, content);
+    }
+}
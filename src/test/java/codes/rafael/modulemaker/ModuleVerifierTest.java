@@ -0,0 +1,96 @@
+package codes.rafael.modulemaker;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ModuleVerifierTest {
+
+    @Test
+    public void testToVersion() {
+        assertEquals(0, ModuleVerifier.toVersion("foo/Bar.class"));
+        assertEquals(11, ModuleVerifier.toVersion("META-INF/versions/11/foo/Bar.class"));
+        assertEquals(-1, ModuleVerifier.toVersion("META-INF/versions/foo/Bar.class"));
+        assertEquals(-1, ModuleVerifier.toVersion("META-INF/versions/11"));
+        assertEquals("foo/Bar.class", ModuleVerifier.toRelativePath("META-INF/versions/11/foo/Bar.class"));
+    }
+
+    @Test
+    public void testVerify() {
+        ModuleVerifier verifier = new ModuleVerifier();
+        verifier.add("foo/");
+        verifier.add("foo/Foo.class");
+        verifier.add("foo/Provider.class");
+        verifier.add("bar/resource.txt");
+        verifier.add("META-INF/MANIFEST.MF");
+        assertEquals(Collections.<String>emptyList(), verifier.verify(0, moduleInfo(new String[] {"foo", "bar"},
+                new String[] {"foo"},
+                new String[] {"bar"},
+                "foo/Provider",
+                "foo/Foo")));
+        assertEquals(2, verifier.classes());
+        assertEquals(2, verifier.packages());
+    }
+
+    @Test
+    public void testMismatch() {
+        ModuleVerifier verifier = new ModuleVerifier();
+        verifier.add("foo/Foo.class");
+        verifier.add("qux/Qux.class");
+        assertEquals(Arrays.asList("Exported package bar does not exist",
+                "Opened package baz does not exist",
+                "Listed package bar does not exist",
+                "Package qux is not listed by the module's packages",
+                "Provider foo.Missing of service foo.Service does not exist",
+                "Main class foo.Main does not exist"), verifier.verify(0, moduleInfo(new String[] {"foo", "bar"},
+                new String[] {"bar"},
+                new String[] {"baz"},
+                "foo/Missing",
+                "foo/Main")));
+    }
+
+    @Test
+    public void testVersionedContent() {
+        ModuleVerifier verifier = new ModuleVerifier();
+        verifier.add("foo/Foo.class");
+        verifier.add("META-INF/versions/11/bar/Bar.class");
+        verifier.add("META-INF/versions/unknown/qux/Qux.class");
+        byte[] moduleInfo = moduleInfo(new String[0], new String[] {"foo", "bar"}, new String[0], null, "bar/Bar");
+        assertEquals(Arrays.asList("Exported package bar does not exist", "Main class bar.Bar does not exist"), verifier.verify(9, moduleInfo));
+        assertEquals(Collections.<String>emptyList(), verifier.verify(11, moduleInfo));
+        assertEquals(Collections.<String>emptyList(), verifier.verify(17, moduleInfo));
+        assertEquals(Collections.singletonList("Exported package qux does not exist"),
+                verifier.verify(17, moduleInfo(new String[0], new String[] {"qux"}, new String[0], null, null)));
+    }
+
+    private static byte[] moduleInfo(String[] packages, String[] exports, String[] opens, String provider, String mainClass) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V9, Opcodes.ACC_MODULE, "module-info", null, null, null);
+        ModuleVisitor moduleVisitor = classWriter.visitModule("foo", 0, null);
+        if (mainClass != null) {
+            moduleVisitor.visitMainClass(mainClass);
+        }
+        for (String aPackage : packages) {
+            moduleVisitor.visitPackage(aPackage);
+        }
+        moduleVisitor.visitRequire("java.base", Opcodes.ACC_MANDATED, null);
+        for (String aPackage : exports) {
+            moduleVisitor.visitExport(aPackage, 0);
+        }
+        for (String aPackage : opens) {
+            moduleVisitor.visitOpen(aPackage, 0);
+        }
+        if (provider != null) {
+            moduleVisitor.visitProvide("foo/Service", provider);
+        }
+        moduleVisitor.visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
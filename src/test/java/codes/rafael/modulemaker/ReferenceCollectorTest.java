@@ -0,0 +1,92 @@
+package codes.rafael.modulemaker;
+
+import org.junit.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReferenceCollectorTest {
+
+    private static final int JAVA_11 = Opcodes.V1_8 + 3;
+
+    @Test
+    public void testCollect() {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(JAVA_11, Opcodes.ACC_PUBLIC, "foo/Bar", "Lqux/Base<Lgeneric/Argument;>;", "qux/Base", new String[] {"baz/Interface"});
+        AnnotationVisitor annotationVisitor = classWriter.visitAnnotation("Lannotation/Type;", true);
+        annotationVisitor.visitEnum("value", "Lenumeration/Type;", "VALUE");
+        annotationVisitor.visit("type", Type.getType("Lconstant/Type;"));
+        annotationVisitor.visitEnd();
+        FieldVisitor fieldVisitor = classWriter.visitField(Opcodes.ACC_PRIVATE, "field", "Lfield/Type;", null, null);
+        fieldVisitor.visitAnnotation("Lfield/Annotation;", true).visitEnd();
+        fieldVisitor.visitEnd();
+        MethodVisitor methodVisitor = classWriter.visitMethod(Opcodes.ACC_PUBLIC,
+                "method",
+                "([Lparameter/Type;)Lreturned/Type;",
+                null,
+                new String[] {"exception/Type"});
+        methodVisitor.visitParameterAnnotation(0, "Lparameter/Annotation;", true).visitEnd();
+        methodVisitor.visitCode();
+        methodVisitor.visitMethodInsn(Opcodes.INVOKESTATIC, "code/Type", "method", "()Lcode/Returned;", false);
+        methodVisitor.visitInsn(Opcodes.ARETURN);
+        methodVisitor.visitMaxs(0, 0);
+        methodVisitor.visitEnd();
+        classWriter.visitEnd();
+        Set<String> references = new TreeSet<String>();
+        new ReferenceCollector().collect(classWriter.toByteArray(), references);
+        assertEquals(new TreeSet<String>(Arrays.asList("annotation",
+                "baz",
+                "code",
+                "constant",
+                "enumeration",
+                "exception",
+                "field",
+                "foo",
+                "generic",
+                "parameter",
+                "qux",
+                "returned")), references);
+    }
+
+    @Test
+    public void testReuse() {
+        ReferenceCollector collector = new ReferenceCollector();
+        Set<String> first = new HashSet<String>(), second = new HashSet<String>();
+        collector.collect(toClassFile("foo/Bar", "qux/Baz"), first);
+        collector.collect(toClassFile("bar/Foo", "java/lang/Object"), second);
+        assertEquals(new HashSet<String>(Arrays.asList("foo", "qux")), first);
+        assertEquals(new HashSet<String>(Arrays.asList("bar", "java.lang")), second);
+    }
+
+    @Test
+    public void testRecentClassFile() {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V21, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "foo/Bar", null, "java/lang/Object", null);
+        classWriter.visitPermittedSubclass("qux/Baz");
+        classWriter.visitNestMember("foo/Bar$Inner");
+        classWriter.visitEnd();
+        Set<String> references = new TreeSet<String>();
+        new ReferenceCollector().collect(classWriter.toByteArray(), references);
+        assertEquals(new TreeSet<String>(Arrays.asList("foo", "java.lang", "qux")), references);
+    }
+
+    /**
+     * Creates a class file of Java 11 that only references its super class.
+     */
+    static byte[] toClassFile(String name, String superName) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(JAVA_11, Opcodes.ACC_PUBLIC, name, null, superName, null);
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}